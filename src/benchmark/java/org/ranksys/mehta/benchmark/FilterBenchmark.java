@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.benchmark;
+
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ranksys.mehta.factories.CompiledFilter;
+import org.ranksys.mehta.factories.FilterFactory;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+import static com.google.inject.name.Names.named;
+
+/**
+ * Cost of building and testing the per-user item filters configured through
+ * {@link FilterFactory}, measured over the whole catalog of one user.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FilterBenchmark {
+
+    @Param({"5000"})
+    public int numUsers;
+
+    @Param({"2000", "20000"})
+    public int numItems;
+
+    @Param({"0.005"})
+    public double density;
+
+    @Param({"all", "notInTrain"})
+    public String filters;
+
+    @Param({"false", "true"})
+    public boolean compileFilters;
+
+    private SyntheticDataset dataset;
+    private Function<String, IntPredicate> filter;
+    private String[] users;
+
+    @Setup
+    public void setup() throws IOException {
+        dataset = new SyntheticDataset(numUsers, numItems, density, 42L, "filters=" + filters, "compileFilters=" + compileFilters);
+        filter = dataset.getInjector().getInstance(Key.get(new TypeLiteral<Function<String, IntPredicate>>() {}));
+        users = dataset.getInjector().getInstance(Key.get(new TypeLiteral<Set<String>>() {}, named("targetUsers")))
+                .toArray(new String[0]);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dataset.delete();
+    }
+
+    @Benchmark
+    public int filter() {
+        String user = users[ThreadLocalRandom.current().nextInt(users.length)];
+        IntPredicate predicate = filter.apply(user);
+        int allowed = 0;
+        for (int iidx = 0; iidx < numItems; iidx++) {
+            if (predicate.test(iidx)) {
+                allowed++;
+            }
+        }
+        CompiledFilter.release(predicate);
+        return allowed;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.benchmark;
+
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import org.jooq.lambda.tuple.Tuple2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.ranksys.core.Recommendation;
+import org.ranksys.mehta.evaluation.MetricsAccumulator;
+import org.ranksys.mehta.factories.metric.RecommendationMetricFactory;
+import org.ranksys.mehta.factories.recommender.RecommenderFactory;
+import org.ranksys.metrics.RecommendationMetric;
+import org.ranksys.recommenders.fast.FastRecommender;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.inject.name.Names.named;
+import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.ranksys.mehta.benchmark.SyntheticDataset.parameters;
+
+/**
+ * Evaluation cost of the metrics built by
+ * {@link RecommendationMetricFactory} over popularity recommendations for all
+ * target users, one metric at a time and all together in a single pass.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MetricBenchmark {
+
+    private static final String[] METRICS = {
+        "prec metric=prec cutoff=10 rel=bin rel.threshold=1",
+        "recall metric=recall cutoff=10 rel=bin rel.threshold=1",
+        "fscore metric=fscore cutoff=10 rel=bin rel.threshold=1",
+        "hitrate metric=hitrate cutoff=10 rel=bin rel.threshold=1",
+        "rr metric=rr cutoff=10 rel=bin rel.threshold=1",
+        "ndcg metric=ndcg cutoff=10 rel=ndcg rel.threshold=1",
+        "numq metric=numq",
+        "numret metric=numret"
+    };
+
+    @Param({"5000"})
+    public int numUsers;
+
+    @Param({"2000"})
+    public int numItems;
+
+    @Param({"0.005", "0.02"})
+    public double density;
+
+    private SyntheticDataset dataset;
+    private List<Tuple2<String, RecommendationMetric<String, String>>> metrics;
+    private List<Recommendation<String, String>> recommendations;
+
+    @Setup
+    public void setup() throws IOException {
+        dataset = new SyntheticDataset(numUsers, numItems, density, 42L);
+
+        RecommendationMetricFactory rmf = dataset.getInstance(RecommendationMetricFactory.class);
+        metrics = new ArrayList<>();
+        for (String line : METRICS) {
+            metrics.add(tuple(parameters(line).name(), rmf.create(parameters(line)).get()));
+        }
+
+        FastRecommender<String, String> pop = dataset.getInstance(RecommenderFactory.class)
+                .create(parameters("pop recommender=pop")).get();
+        recommendations = dataset.getInjector().getInstance(Key.get(new TypeLiteral<Set<String>>() {}, named("targetUsers"))).stream()
+                .map(user -> pop.getRecommendation(user, 100))
+                .collect(toList());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dataset.delete();
+    }
+
+    @Benchmark
+    public void eachMetric(Blackhole bh) {
+        for (Tuple2<String, RecommendationMetric<String, String>> metric : metrics) {
+            for (Recommendation<String, String> recommendation : recommendations) {
+                bh.consume(metric.v2.evaluate(recommendation));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Tuple2<String, Double>> singlePass(Blackhole bh) {
+        MetricsAccumulator<String, String> accumulator = new MetricsAccumulator<>(metrics, recommendations.size());
+        for (Recommendation<String, String> recommendation : recommendations) {
+            accumulator.add(recommendation, (name, value) -> bh.consume(value));
+        }
+        return accumulator.evaluate();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.benchmark;
+
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ranksys.mehta.config.MehtaParameters;
+import org.ranksys.mehta.factories.recommender.RecommenderFactory;
+import org.ranksys.recommenders.fast.FastRecommendation;
+import org.ranksys.recommenders.fast.FastRecommender;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+import static com.google.inject.name.Names.named;
+import static org.ranksys.mehta.benchmark.SyntheticDataset.parameters;
+
+/**
+ * Training and per-user recommendation latency of every recommender
+ * reachable from {@link RecommenderFactory}.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RecommenderBenchmark {
+
+    private static final Map<String, String> CONFIGS = new HashMap<>();
+
+    static {
+        CONFIGS.put("pop", "pop recommender=pop");
+        CONFIGS.put("ub", "ub recommender=ub q=1 neighborhood=knn neighborhood.k=100 neighborhood.cached=true"
+                + " neighborhood.sim=vec-cosine neighborhood.sim.dense=true");
+        CONFIGS.put("ib", "ib recommender=ib q=1 neighborhood=knn neighborhood.k=10 neighborhood.cached=true"
+                + " neighborhood.sim=vec-cosine neighborhood.sim.dense=true");
+        CONFIGS.put("mf", "mf recommender=mf mf=hkv mf.k=20 mf.numIter=5 mf.reg=0.1 mf.alpha=1.0");
+        CONFIGS.put("fm", "fm recommender=fm fm=bpr fm.k=20 fm.numIter=5 fm.learnRate=0.01"
+                + " fm.regW=0.01 fm.regM=0.01 fm.sdev=0.1");
+    }
+
+    @Param({"5000"})
+    public int numUsers;
+
+    @Param({"2000"})
+    public int numItems;
+
+    @Param({"0.005", "0.02"})
+    public double density;
+
+    @Param({"pop", "ub", "ib", "mf", "fm"})
+    public String recommender;
+
+    @Param({"100"})
+    public int maxLength;
+
+    private SyntheticDataset dataset;
+    private RecommenderFactory rf;
+    private MehtaParameters params;
+    private FastRecommender<String, String> fastRecommender;
+    private Function<String, IntPredicate> filters;
+    private String[] users;
+
+    @Setup
+    public void setup() throws IOException {
+        dataset = new SyntheticDataset(numUsers, numItems, density, 42L);
+        rf = dataset.getInstance(RecommenderFactory.class);
+        params = parameters(CONFIGS.get(recommender));
+        fastRecommender = rf.create(params).get();
+        filters = dataset.getInjector().getInstance(Key.get(new TypeLiteral<Function<String, IntPredicate>>() {}));
+        users = dataset.getInjector().getInstance(Key.get(new TypeLiteral<Set<String>>() {}, named("targetUsers")))
+                .toArray(new String[0]);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dataset.delete();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public FastRecommender<String, String> create() {
+        return rf.create(params).get();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public FastRecommendation recommendation() {
+        String user = users[ThreadLocalRandom.current().nextInt(users.length)];
+        return fastRecommender.getRecommendation(fastRecommender.user2uidx(user), maxLength, filters.apply(user));
+    }
+}
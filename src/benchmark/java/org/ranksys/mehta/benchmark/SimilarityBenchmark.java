@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ranksys.mehta.factories.recommender.ItemNeighborhoodFactory;
+import org.ranksys.mehta.factories.recommender.ItemSimilarityFactory;
+import org.ranksys.mehta.factories.recommender.UserNeighborhoodFactory;
+import org.ranksys.mehta.factories.recommender.UserSimilarityFactory;
+import org.ranksys.recommenders.nn.item.neighborhood.ItemNeighborhood;
+import org.ranksys.recommenders.nn.item.sim.ItemSimilarity;
+import org.ranksys.recommenders.nn.user.neighborhood.UserNeighborhood;
+import org.ranksys.recommenders.nn.user.sim.UserSimilarity;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.ranksys.mehta.benchmark.SyntheticDataset.parameters;
+
+/**
+ * Similarity computation and neighborhood construction through the
+ * similarity and neighborhood factories.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SimilarityBenchmark {
+
+    @Param({"5000"})
+    public int numUsers;
+
+    @Param({"2000"})
+    public int numItems;
+
+    @Param({"0.005", "0.02"})
+    public double density;
+
+    @Param({"set-cosine", "vec-cosine", "set-jaccard", "vec-jaccard"})
+    public String sim;
+
+    private SyntheticDataset dataset;
+    private ItemSimilarityFactory isf;
+    private UserSimilarityFactory usf;
+    private ItemNeighborhoodFactory inf;
+    private UserNeighborhoodFactory unf;
+
+    @Setup
+    public void setup() throws IOException {
+        dataset = new SyntheticDataset(numUsers, numItems, density, 42L);
+        dataset.getTrainPreferences();
+        isf = dataset.getInstance(ItemSimilarityFactory.class);
+        usf = dataset.getInstance(UserSimilarityFactory.class);
+        inf = dataset.getInstance(ItemNeighborhoodFactory.class);
+        unf = dataset.getInstance(UserNeighborhoodFactory.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dataset.delete();
+    }
+
+    @Benchmark
+    public long itemSimilarity() {
+        ItemSimilarity<String> is = isf.create(parameters(sim + " alpha=0.5 dense=true")).get();
+        return IntStream.range(0, is.numItems())
+                .mapToLong(iidx -> is.similarElems(iidx).count())
+                .sum();
+    }
+
+    @Benchmark
+    public long userSimilarity() {
+        UserSimilarity<String> us = usf.create(parameters(sim + " alpha=0.5 dense=true")).get();
+        return IntStream.range(0, us.numUsers())
+                .mapToLong(uidx -> us.similarElems(uidx).count())
+                .sum();
+    }
+
+    @Benchmark
+    public ItemNeighborhood<String> itemNeighborhood() {
+        return inf.create(parameters("knn k=10 cached=true sim=" + sim + " sim.alpha=0.5 sim.dense=true")).get();
+    }
+
+    @Benchmark
+    public UserNeighborhood<String> userNeighborhood() {
+        return unf.create(parameters("knn k=100 cached=true sim=" + sim + " sim.alpha=0.5 sim.dense=true")).get();
+    }
+}
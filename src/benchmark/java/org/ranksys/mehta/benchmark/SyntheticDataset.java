@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.benchmark;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.mehta.config.MehtaModule;
+import org.ranksys.mehta.config.MehtaParameters;
+import org.ranksys.mehta.config.MehtaProperties;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static com.google.inject.name.Names.named;
+
+/**
+ * Synthetic dataset written to a temporary directory and loaded through
+ * {@link MehtaModule}, so that benchmarks exercise the same wiring as the
+ * command line tools. Item popularity follows a skewed distribution and each
+ * user rates about {@code density * numItems} items, with a tenth of them
+ * held out as test preferences.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class SyntheticDataset {
+
+    private final Path basePath;
+    private final Injector injector;
+
+    public SyntheticDataset(int numUsers, int numItems, double density, long seed, String... config) throws IOException {
+        this.basePath = Files.createTempDirectory("mehta-benchmark");
+
+        Random random = new Random(seed);
+        try (PrintWriter users = new PrintWriter(Files.newBufferedWriter(basePath.resolve("users.txt")));
+                PrintWriter items = new PrintWriter(Files.newBufferedWriter(basePath.resolve("items.txt")));
+                PrintWriter train = new PrintWriter(Files.newBufferedWriter(basePath.resolve("train.data")));
+                PrintWriter test = new PrintWriter(Files.newBufferedWriter(basePath.resolve("test.data")))) {
+            for (int i = 0; i < numItems; i++) {
+                items.println("i" + i);
+            }
+
+            int meanLength = Math.max(1, (int) (density * numItems));
+            BitSet rated = new BitSet(numItems);
+            for (int u = 0; u < numUsers; u++) {
+                users.println("u" + u);
+
+                rated.clear();
+                int length = Math.min(numItems, 1 + random.nextInt(2 * meanLength));
+                while (rated.cardinality() < length) {
+                    double r = random.nextDouble();
+                    rated.set((int) (numItems * (random.nextBoolean() ? r * r * r : r)));
+                }
+                for (int i = rated.nextSetBit(0); i >= 0; i = rated.nextSetBit(i + 1)) {
+                    PrintWriter out = random.nextDouble() < 0.1 ? test : train;
+                    out.println("u" + u + "\t" + "i" + i + "\t" + (1 + random.nextInt(5)));
+                }
+            }
+        }
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(basePath.resolve("mehta.properties")))) {
+            out.println("format=simple");
+            out.println("cacheEntries=0");
+            out.println("preferenceSnapshots=false");
+            for (String line : config) {
+                out.println(line);
+            }
+        }
+
+        MehtaProperties properties = new MehtaProperties(basePath.resolve("mehta.properties"));
+        this.injector = Guice.createInjector(new MehtaModule(properties));
+    }
+
+    public Injector getInjector() {
+        return injector;
+    }
+
+    public <T> T getInstance(Class<T> type) {
+        return injector.getInstance(type);
+    }
+
+    public FastPreferenceData<String, String> getTrainPreferences() {
+        return injector.getInstance(Key.get(new TypeLiteral<FastPreferenceData<String, String>>() {}, named("trainPreferences")));
+    }
+
+    public FastPreferenceData<String, String> getTestPreferences() {
+        return injector.getInstance(Key.get(new TypeLiteral<FastPreferenceData<String, String>>() {}, named("testPreferences")));
+    }
+
+    public static MehtaParameters parameters(String line) {
+        return MehtaParameters.parse(line);
+    }
+
+    public void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(basePath)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
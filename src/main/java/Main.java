@@ -13,6 +13,15 @@ public class Main {
             case "metrics":
                 clss = "Metrics";
                 break;
+            case "serve":
+                clss = "Serve";
+                break;
+            case "batch":
+                clss = "Batch";
+                break;
+            case "merge":
+                clss = "Merge";
+                break;
             default:
                 clss = null;
                 System.err.println(String.format("Command %s unknown.", args[0]));
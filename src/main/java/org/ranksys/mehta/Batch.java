@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.ranksys.mehta.config.MehtaModule;
+import org.ranksys.mehta.config.MehtaProperties;
+import org.ranksys.mehta.config.SharedData;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a script of commands in a single JVM. Each line of the script is one
+ * of
+ *
+ * <pre>
+ * recommendations &lt;config&gt; &lt;recommenders&gt;
+ * metrics &lt;config&gt; &lt;metrics&gt; &lt;recommenders&gt;
+ * </pre>
+ *
+ * with the same arguments as the corresponding commands, except that
+ * recommenders are always read from files. Empty lines and
+ * lines starting with # are ignored. Users, items and preference data are
+ * loaded once for all the configurations that refer to the same files, and
+ * the injector of a configuration is kept for the following steps with the
+ * same configuration, together with its singletons such as cached
+ * similarities and compiled filters. After the last step of a
+ * configuration its injector is dropped, and so is the shared data whose
+ * files no later step refers to.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class Batch {
+
+    private static final Logger LOG = Logger.getLogger(Batch.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        InputStream in = args[0].equals("-") ? System.in : new FileInputStream(args[0]);
+
+        new Batch(in).execute();
+    }
+
+    protected final InputStream in;
+    private final SharedData shared;
+    private final Map<String, MehtaProperties> properties;
+    private final Map<String, Injector> injectors;
+
+    public Batch(InputStream in) {
+        this.in = in;
+        this.shared = new SharedData();
+        this.properties = new HashMap<>();
+        this.injectors = new HashMap<>();
+    }
+
+    public void execute() throws Exception {
+        List<String> steps = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    steps.add(line);
+                }
+            }
+        }
+
+        // last step of every configuration, after which it can be released
+        Map<String, Integer> lastSteps = new HashMap<>();
+        for (int i = 0; i < steps.size(); i++) {
+            String[] args = steps.get(i).split("\\s+");
+            if (args.length > 1) {
+                lastSteps.put(getKey(args[1]), i);
+            }
+        }
+
+        for (int i = 0; i < steps.size(); i++) {
+            String[] args = steps.get(i).split("\\s+");
+            LOG.log(Level.INFO, "step {0}: {1}", new Object[]{i + 1, steps.get(i)});
+            long start = System.nanoTime();
+            run(args);
+            long time = (System.nanoTime() - start) / 1_000_000;
+            LOG.log(Level.INFO, "step {0} completed in {1} ms", new Object[]{i + 1, Long.toString(time)});
+            times.add(time);
+
+            String key = getKey(args[1]);
+            if (lastSteps.get(key) == i) {
+                Set<String> laterFiles = new HashSet<>();
+                for (String later : lastSteps.keySet()) {
+                    if (lastSteps.get(later) > i) {
+                        getProperties(later).getDataFiles().forEach(file -> laterFiles.add(file + "\t"));
+                    }
+                }
+                release(key, laterFiles);
+            }
+        }
+
+        StringBuilder summary = new StringBuilder("batch completed");
+        for (int i = 0; i < steps.size(); i++) {
+            summary.append('\n').append(times.get(i)).append(" ms\t").append(steps.get(i));
+        }
+        LOG.info(summary.toString());
+    }
+
+    private void run(String[] args) throws Exception {
+        switch (args[0]) {
+            case "recommendations":
+                try (InputStream recommenders = open(args[2])) {
+                    new Recommendations(getProperties(args[1]), getInjector(args[1]), recommenders).execute();
+                }
+                break;
+            case "metrics":
+                try (InputStream recommenders = open(args[3])) {
+                    new Metrics(getProperties(args[1]), getInjector(args[1]), Paths.get(args[2]), recommenders).execute();
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Command %s unknown.", args[0]));
+        }
+    }
+
+    private static InputStream open(String file) throws IOException {
+        return Files.newInputStream(Paths.get(file));
+    }
+
+    private static String getKey(String config) {
+        return Paths.get(config).toAbsolutePath().normalize().toString();
+    }
+
+    private MehtaProperties getProperties(String config) throws IOException {
+        String key = getKey(config);
+        MehtaProperties p = properties.get(key);
+        if (p == null) {
+            p = new MehtaProperties(Paths.get(config));
+            properties.put(key, p);
+        }
+        return p;
+    }
+
+    private Injector getInjector(String config) throws IOException {
+        String key = getKey(config);
+        Injector injector = injectors.get(key);
+        if (injector == null) {
+            injector = Guice.createInjector(new MehtaModule(getProperties(config), shared.forOwner(key)));
+            injectors.put(key, injector);
+        }
+        return injector;
+    }
+
+    private void release(String key, Set<String> laterFiles) {
+        injectors.remove(key);
+        properties.remove(key);
+        // shared entries are keyed by fingerprints, which start every file with its path and a tab
+        int released = shared.release(key, sharedKey -> laterFiles.stream().anyMatch(sharedKey::contains));
+        LOG.log(Level.INFO, "released {0} and {1} shared entries", new Object[]{key, released});
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import org.jooq.lambda.Unchecked;
+import org.ranksys.core.Recommendation;
+import org.ranksys.formats.rec.RecommendationFormat;
+import org.ranksys.formats.rec.RecommendationFormat.Writer;
+import org.ranksys.mehta.config.MehtaModule;
+import org.ranksys.mehta.config.MehtaParameters;
+import org.ranksys.mehta.config.MehtaProperties;
+import org.ranksys.mehta.runner.OutputFiles;
+import org.ranksys.mehta.runner.Shard;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Combines the part files written by sharded recommendation runs (see
+ * {@link Shard}) into one recommendation file per recommender, in the
+ * configured format. A recommender is only merged once all its parts are
+ * complete. The number of shards is that of the {@code shard} property if it
+ * is not {@code 0/1}, and all the parts must have been written for that
+ * number of shards; otherwise all the parts must agree on it.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class Merge {
+
+    private static final Logger LOG = Logger.getLogger(Merge.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        Path config = Paths.get(args[0]);
+        InputStream in = args[1].equals("-") ? System.in : new FileInputStream(args[1]);
+
+        new Merge(config, in).execute();
+    }
+
+    protected final InputStream in;
+    protected final MehtaProperties properties;
+    protected final Injector injector;
+
+    public Merge(Path config, InputStream in) throws IOException {
+        this.properties = new MehtaProperties(config);
+        this.injector = Guice.createInjector(new MehtaModule(properties));
+        this.in = in;
+    }
+
+    public void execute() throws Exception {
+        RecommendationFormat<String, String> format = injector.getInstance(Key.get(new TypeLiteral<RecommendationFormat<String, String>>() {}));
+
+        MehtaParameters.read(in).forEach(Unchecked.consumer(params -> merge(params.name(), format)));
+    }
+
+    private void merge(String recName, RecommendationFormat<String, String> format) throws IOException {
+        Path recommendationFile = properties.getRecommendationFile(recName);
+        if (OutputFiles.isDone(recommendationFile)) {
+            LOG.log(Level.INFO, "{0} already exists", recName);
+            return;
+        }
+
+        List<Path> partFiles;
+        try (Stream<Path> files = Files.list(recommendationFile.getParent())) {
+            partFiles = files
+                    .filter(file -> file.getFileName().toString().startsWith(recommendationFile.getFileName() + ".part-"))
+                    .filter(file -> Shard.ofPartFile(file) != null)
+                    .sorted((f1, f2) -> Integer.compare(Shard.ofPartFile(f1).getIndex(), Shard.ofPartFile(f2).getIndex()))
+                    .collect(toList());
+        }
+        if (partFiles.isEmpty()) {
+            LOG.log(Level.WARNING, "{0} has no parts", recName);
+            return;
+        }
+
+        Set<Integer> counts = partFiles.stream()
+                .map(file -> Shard.ofPartFile(file).getCount())
+                .collect(toCollection(TreeSet::new));
+        Shard shard = properties.getShard();
+        int numShards = shard.isWhole() ? counts.iterator().next() : shard.getCount();
+        if (counts.size() > 1 || counts.iterator().next() != numShards) {
+            throw new IllegalStateException(String.format("%s has parts of %s shards, expected %d", recName, counts, numShards));
+        }
+        for (int i = 0; i < numShards; i++) {
+            Path partFile = new Shard(i, numShards).getPartFile(recommendationFile);
+            if (!OutputFiles.isDone(partFile)) {
+                LOG.log(Level.WARNING, "{0} is missing part {1}", new Object[]{recName, partFile});
+                return;
+            }
+        }
+
+        LOG.log(Level.INFO, "merging {0} parts of {1}", new Object[]{numShards, recName});
+        try (Writer<String, String> writer = format.getWriter(OutputFiles.getTmpFile(recommendationFile))) {
+            for (int i = 0; i < numShards; i++) {
+                Path partFile = new Shard(i, numShards).getPartFile(recommendationFile);
+                try (Stream<Recommendation<String, String>> recommendations = format.getReader(partFile).readAll()) {
+                    recommendations.forEach(Unchecked.consumer(writer::write));
+                }
+            }
+        }
+        OutputFiles.commit(recommendationFile);
+    }
+}
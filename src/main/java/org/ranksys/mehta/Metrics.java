@@ -18,9 +18,13 @@ import org.ranksys.formats.rec.RecommendationFormat;
 import org.ranksys.mehta.config.MehtaModule;
 import org.ranksys.mehta.config.MehtaParameters;
 import org.ranksys.mehta.config.MehtaProperties;
+import org.ranksys.mehta.evaluation.ChunkedEvaluator;
+import org.ranksys.mehta.evaluation.MetricsAccumulator;
+import org.ranksys.mehta.evaluation.ResultsSink;
 import org.ranksys.mehta.factories.metric.RecommendationMetricFactory;
+import org.ranksys.mehta.formats.rec.BinaryRecommendationFormat;
+import org.ranksys.mehta.runner.BoundedExecutor;
 import org.ranksys.metrics.RecommendationMetric;
-import org.ranksys.metrics.basic.AverageRecommendationMetric;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -29,11 +33,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
-import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import static com.google.inject.name.Names.named;
 import static java.util.stream.Collectors.toList;
@@ -61,8 +67,16 @@ public class Metrics {
     protected final InputStream in;
 
     public Metrics(Path config, Path metricsFile, InputStream in) throws IOException {
-        this.properties = new MehtaProperties(config);
-        this.injector = Guice.createInjector(new MehtaModule(properties));
+        this(new MehtaProperties(config), metricsFile, in);
+    }
+
+    private Metrics(MehtaProperties properties, Path metricsFile, InputStream in) {
+        this(properties, Guice.createInjector(new MehtaModule(properties)), metricsFile, in);
+    }
+
+    public Metrics(MehtaProperties properties, Injector injector, Path metricsFile, InputStream in) {
+        this.properties = properties;
+        this.injector = injector;
         this.metricsFile = metricsFile;
         this.in = in;
 
@@ -73,19 +87,48 @@ public class Metrics {
 
         Collection<Tuple2<String, RecommendationMetric<String, String>>> recommendationMetrics = getRecommendationMetrics();
 
-        MehtaParameters.read(in).forEach(Unchecked.consumer(params -> {
-            String recName = params.name();
+        int concurrentEvaluations = Integer.parseInt(properties.getProperty("concurrentEvaluations"));
+        int numThreads = Integer.parseInt(properties.getProperty("evaluationThreads"));
+        int chunkSize = Integer.parseInt(properties.getProperty("evaluationChunkSize"));
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        ChunkedEvaluator evaluator = new ChunkedEvaluator(executor, numThreads, chunkSize);
+
+        try (ResultsSink sink = getResultsSink()) {
+            if (concurrentEvaluations <= 1) {
+                MehtaParameters.read(in).forEach(Unchecked.consumer(params -> evaluate(params, evaluator, sink, recommendationMetrics)));
+            } else {
+                BoundedExecutor.execute(concurrentEvaluations, MehtaParameters.read(in).iterator(), MehtaParameters::name,
+                        params -> evaluate(params, evaluator, sink, recommendationMetrics));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 
-            LOG.log(Level.INFO, "evaluating {0}", recName);
+    private void evaluate(MehtaParameters params, ChunkedEvaluator evaluator, ResultsSink sink,
+            Collection<Tuple2<String, RecommendationMetric<String, String>>> recommendationMetrics) throws IOException, InterruptedException {
+        String recName = params.name();
 
-            List<Recommendation<String, String>> recommendations = readRecommendations(recName);
-            if (recommendations == null) {
-                LOG.log(Level.WARNING, "{0} does not exists", recName);
-                return;
-            }
+        LOG.log(Level.INFO, "evaluating {0}", recName);
 
-            evaluateRecommendationMetrics(recommendationMetrics, recName, recommendations);
-        }));
+        Path recPath = properties.getRecommendationFile(recName);
+        if (!Files.exists(recPath)) {
+            LOG.log(Level.WARNING, "{0} does not exists", recName);
+            return;
+        }
+
+        evaluateRecommendationMetrics(evaluator, sink, recommendationMetrics, recName, recPath);
+    }
+
+    private ResultsSink getResultsSink() throws IOException {
+        String output = properties.getProperty("metricsOutput");
+        boolean binary = properties.getProperty("metricsOutputFormat").equals("binary");
+
+        if (output.equals("-")) {
+            return new ResultsSink(System.out, binary, false);
+        } else {
+            return new ResultsSink(Files.newOutputStream(Paths.get(output)), binary, true);
+        }
     }
 
     private Collection<Tuple2<String, RecommendationMetric<String, String>>> getRecommendationMetrics() throws IOException {
@@ -105,41 +148,42 @@ public class Metrics {
                 .collect(toList());
     }
 
-    private List<Recommendation<String, String>> readRecommendations(String recName) throws IOException {
+    /**
+     * Recommendations to evaluate. Binary files are not read in full: the
+     * recommendations of the target users are looked up instead.
+     */
+    private Stream<Recommendation<String, String>> readRecommendations(Path recPath, Set<String> targetUsers) throws IOException {
         RecommendationFormat<String, String> format = injector.getInstance(Key.get(new TypeLiteral<RecommendationFormat<String, String>>() {}));
 
-        Path recPath = properties.getRecommendationFile(recName);
-        if (!Files.exists(recPath)) {
-            return null;
+        RecommendationFormat.Reader<String, String> reader = format.getReader(recPath);
+        if (reader instanceof BinaryRecommendationFormat.BinaryReader) {
+            BinaryRecommendationFormat<String, String>.BinaryReader binary = (BinaryRecommendationFormat<String, String>.BinaryReader) reader;
+            return targetUsers.stream()
+                    .map(binary::getRecommendation)
+                    .filter(Optional::isPresent)
+                    .map(Optional::get);
         }
 
-        return format.getReader(recPath).readAll()
-                .collect(toList());
+        return reader.readAll();
     }
 
-    private void evaluateRecommendationMetrics(
+    private void evaluateRecommendationMetrics(ChunkedEvaluator evaluator, ResultsSink sink,
             Collection<Tuple2<String, RecommendationMetric<String, String>>> recommendationMetrics,
-            String recName, List<Recommendation<String, String>> recommendations) {
-        int numUsers = injector.getInstance(Key.get(new TypeLiteral<Set<String>>() {}, named("targetUsers"))).size();
-
-        recommendationMetrics.forEach(Unchecked.consumer(t -> {
-            String metricName = t.v1;
-            RecommendationMetric<String, String> metric = t.v2;
-
-            double avg = recommendations.parallelStream()
-                    .collect(
-                            () -> new AverageRecommendationMetric<>(metric, numUsers),
-                            (m, r) -> println(recName, metricName, r.getUser(), Double.toString(m.addAndEvaluate(r))),
-                            AverageRecommendationMetric::combine
-                    )
-                    .evaluate();
-
-            println(recName, metricName, "", Double.toString(avg));
-        }));
-    }
+            String recName, Path recPath) throws IOException, InterruptedException {
+        Set<String> targetUsers = injector.getInstance(Key.get(new TypeLiteral<Set<String>>() {}, named("targetUsers")));
+        int numUsers = targetUsers.size();
+
+        MetricsAccumulator<String, String> metrics;
+        try (Stream<Recommendation<String, String>> recommendations = readRecommendations(recPath, targetUsers)) {
+            metrics = evaluator.collect(recommendations,
+                    () -> new MetricsAccumulator<>(recommendationMetrics, numUsers),
+                    (m, r) -> m.add(r, (metricName, value) -> sink.add(recName, metricName, r.getUser(), value)),
+                    MetricsAccumulator::combine
+            );
+        }
 
-    private static synchronized void println(String... fields) {
-        System.out.println(String.join("\t", fields));
+        sink.flush();
+        metrics.evaluate().forEach(t -> sink.add(recName, t.v1, "", t.v2));
     }
 
 }
@@ -11,7 +11,9 @@ import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
 import org.jooq.lambda.Unchecked;
+import org.ranksys.core.preference.fast.FastPreferenceData;
 import org.ranksys.evaluation.runner.RecommenderRunner;
 import org.ranksys.formats.rec.RecommendationFormat;
 import org.ranksys.formats.rec.RecommendationFormat.Writer;
@@ -19,6 +21,12 @@ import org.ranksys.mehta.config.MehtaModule;
 import org.ranksys.mehta.config.MehtaParameters;
 import org.ranksys.mehta.config.MehtaProperties;
 import org.ranksys.mehta.factories.recommender.RecommenderFactory;
+import org.ranksys.mehta.runner.BoundedExecutor;
+import org.ranksys.mehta.runner.CheckpointWriter;
+import org.ranksys.mehta.runner.MehtaRecommenderRunner;
+import org.ranksys.mehta.runner.OutputFiles;
+import org.ranksys.mehta.runner.Shard;
+import org.ranksys.mehta.stats.RunStatistics;
 import org.ranksys.recommenders.fast.FastRecommender;
 
 import java.io.FileInputStream;
@@ -28,6 +36,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,26 +60,86 @@ public class Recommendations {
     protected final Injector injector;
 
     public Recommendations(Path config, InputStream in) throws IOException {
-        this.properties = new MehtaProperties(config);
-        this.injector = Guice.createInjector(new MehtaModule(properties));
+        this(new MehtaProperties(config), in);
+    }
+
+    private Recommendations(MehtaProperties properties, InputStream in) {
+        this(properties, Guice.createInjector(new MehtaModule(properties)), in);
+    }
+
+    public Recommendations(MehtaProperties properties, Injector injector, InputStream in) {
+        this.properties = properties;
+        this.injector = injector;
         this.in = in;
     }
 
-    public void execute() {
+    public void execute() throws Exception {
+        int concurrentRecommenders = Integer.parseInt(properties.getProperty("concurrentRecommenders"));
+
         RecommenderFactory rf = injector.getInstance(RecommenderFactory.class);
         RecommendationFormat<String, String> format = injector.getInstance(Key.get(new TypeLiteral<RecommendationFormat<String, String>>() {}));
-        RecommenderRunner<String, String> rr = injector.getInstance(Key.get(new TypeLiteral<RecommenderRunner<String, String>>() {}));
 
-        MehtaParameters.read(in).forEach(Unchecked.consumer(params -> {
-            String recName = params.name();
-            Path recommendationFile = properties.getRecommendationFile(recName);
+        loadData();
 
-            if (Files.exists(recommendationFile) && !recName.startsWith("test")) {
-                LOG.log(Level.INFO, "{0} already exists", recName);
-                return;
-            }
+        if (concurrentRecommenders <= 1) {
+            RecommenderRunner<String, String> rr = getRecommenderRunner();
+            MehtaParameters.read(in).forEach(Unchecked.consumer(params -> run(params, rf, format, rr)));
+        } else {
+            BoundedExecutor.execute(concurrentRecommenders, MehtaParameters.read(in).iterator(), MehtaParameters::name,
+                    params -> run(params, rf, format, getRecommenderRunner()));
+        }
+    }
+
+    /**
+     * Loads the training preferences shared by all recommenders, with
+     * statistics of their own instead of being charged to the first
+     * recommender.
+     */
+    private void loadData() throws IOException {
+        RunStatistics stats = RunStatistics.start("data");
+        try {
+            RunStatistics.time("data", () -> injector.getInstance(Key.get(new TypeLiteral<FastPreferenceData<String, String>>() {}, Names.named("trainPreferences"))));
+        } finally {
+            stats.finish();
+        }
+        stats.write(properties.getStatsFile("data" + properties.getShard().getSuffix()));
+    }
+
+    /**
+     * Everything that determines the recommendations of a run, to tell
+     * whether checkpointed segments can be continued.
+     */
+    private String getManifest(MehtaParameters params, Shard shard) throws IOException {
+        Path targetUsersFile = Paths.get(properties.getProperty("targetUsersFile"));
+        return params + "\n"
+                + properties.getTrainFingerprint()
+                + "shard=" + shard.getSuffix() + "\n"
+                + "format=" + properties.getProperty("format") + "\n"
+                + "filters=" + properties.getProperty("filters") + "\n"
+                + "maxLength=" + properties.getProperty("maxLength") + "\n"
+                + (Files.exists(targetUsersFile) ? MehtaProperties.fingerprint(targetUsersFile) : "");
+    }
+
+    private RecommenderRunner<String, String> getRecommenderRunner() {
+        return injector.getInstance(Key.get(new TypeLiteral<RecommenderRunner<String, String>>() {}));
+    }
 
-            Optional<FastRecommender<String, String>> recommender = rf.create(params);
+    private void run(MehtaParameters params, RecommenderFactory rf, RecommendationFormat<String, String> format, RecommenderRunner<String, String> rr) throws IOException {
+        String recName = params.name();
+        Shard shard = properties.getShard();
+        Path recommendationFile = shard.getPartFile(properties.getRecommendationFile(recName));
+
+        if (OutputFiles.isDone(recommendationFile) && !recName.startsWith("test")) {
+            LOG.log(Level.INFO, "{0} already exists", recName);
+            return;
+        }
+        if (Files.exists(recommendationFile)) {
+            LOG.log(Level.WARNING, "{0} has no completion marker, generating it again", recName);
+        }
+
+        RunStatistics stats = RunStatistics.start(recName);
+        try {
+            Optional<FastRecommender<String, String>> recommender = RunStatistics.time("recommender", () -> rf.create(params));
             if (!recommender.isPresent()) {
                 LOG.log(Level.WARNING, "{0} not recognized", recName);
                 return;
@@ -78,12 +147,35 @@ public class Recommendations {
 
             LOG.log(Level.INFO, "{0} in process", recName);
 
-            try (Writer<String, String> writer = format.getWriter(recommendationFile)) {
-                rr.run(recommender.get(), writer);
+            int checkpointUsers = Integer.parseInt(properties.getProperty("checkpointUsers"));
+            if (checkpointUsers > 0) {
+                // test recommenders are always generated again, so their segments are not continued either
+                String manifest = recName.startsWith("test") ? null : getManifest(params, shard);
+                CheckpointWriter<String, String> writer = new CheckpointWriter<>(recommendationFile, format, checkpointUsers, manifest);
+                Set<String> written = writer.getWrittenUsers();
+                if (!written.isEmpty() && rr instanceof MehtaRecommenderRunner) {
+                    LOG.log(Level.INFO, "{0} resuming after {1} users", new Object[]{recName, written.size()});
+                    rr = ((MehtaRecommenderRunner<String, String>) rr).without(written);
+                }
+                try {
+                    rr.run(recommender.get(), writer);
+                } finally {
+                    writer.close();
+                }
+                writer.commit();
+            } else {
+                try (Writer<String, String> writer = format.getWriter(OutputFiles.getTmpFile(recommendationFile))) {
+                    rr.run(recommender.get(), writer);
+                }
+                OutputFiles.commit(recommendationFile);
             }
+        } finally {
+            stats.finish();
+        }
+        stats.write(properties.getStatsFile(recName + shard.getSuffix()));
 
-            LOG.log(Level.INFO, "{0} completed", recName);
-        }));
+        LOG.log(Level.INFO, "{0} completed: {1} users, {2} users/s, p99 {3} us", new Object[]{
+            recName, stats.getNumUsers(), (long) stats.getUsersPerSecond(), stats.getLatency().getPercentile(0.99) / 1_000});
     }
 
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.util.tuples.Tuple2id;
+import org.ranksys.mehta.config.MehtaModule;
+import org.ranksys.mehta.config.MehtaParameters;
+import org.ranksys.mehta.config.MehtaProperties;
+import org.ranksys.mehta.factories.CompiledFilter;
+import org.ranksys.mehta.factories.FilterFactory;
+import org.ranksys.mehta.factories.recommender.RecommenderFactory;
+import org.ranksys.mehta.stats.LatencyHistogram;
+import org.ranksys.recommenders.fast.FastRecommendation;
+import org.ranksys.recommenders.fast.FastRecommender;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Online serving of the recommenders of a configuration. The recommenders
+ * are built once and kept in memory, and top-N recommendations for single
+ * users are answered over HTTP:
+ *
+ * <ul>
+ * <li>{@code GET /recommend?rec=<name>&user=<user>[&n=<n>][&filters=<filters>]}
+ * returns one {@code item\tscore} line per recommended item. The number of
+ * items and the filters default to the {@code maxLength} and
+ * {@code filters} properties. Only the filter expressions of the
+ * semicolon-separated {@code serveFilters} property, built when the server
+ * starts, are accepted.</li>
+ * <li>{@code GET /stats} returns the number of requests and latency
+ * percentiles of every recommender.</li>
+ * </ul>
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class Serve {
+
+    private static final Logger LOG = Logger.getLogger(Serve.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        Path config = Paths.get(args[0]);
+        InputStream in = args[1].equals("-") ? System.in : new FileInputStream(args[1]);
+
+        new Serve(config, in).execute();
+    }
+
+    protected final InputStream in;
+    protected final MehtaProperties properties;
+    protected final Injector injector;
+
+    private final FastUserIndex<String> users;
+    private final FastItemIndex<String> items;
+    private final Map<String, FastRecommender<String, String>> recommenders;
+    private final Map<String, LatencyHistogram> latencies;
+    private final Map<String, Function<String, IntPredicate>> filters;
+
+    public Serve(Path config, InputStream in) throws IOException {
+        this.properties = new MehtaProperties(config);
+        this.injector = Guice.createInjector(new MehtaModule(properties));
+        this.in = in;
+        this.users = injector.getInstance(Key.get(new TypeLiteral<FastUserIndex<String>>() {}));
+        this.items = injector.getInstance(Key.get(new TypeLiteral<FastItemIndex<String>>() {}));
+        this.recommenders = new LinkedHashMap<>();
+        this.latencies = new LinkedHashMap<>();
+        this.filters = new HashMap<>();
+    }
+
+    public void execute() throws Exception {
+        RecommenderFactory rf = injector.getInstance(RecommenderFactory.class);
+
+        MehtaParameters.read(in).forEach(params -> {
+            Optional<FastRecommender<String, String>> recommender = rf.create(params);
+            if (recommender.isPresent()) {
+                LOG.log(Level.INFO, "{0} ready", params.name());
+                recommenders.put(params.name(), recommender.get());
+                latencies.put(params.name(), new LatencyHistogram());
+            } else {
+                LOG.log(Level.WARNING, "{0} not recognized", params.name());
+            }
+        });
+
+        boolean compileFilters = Boolean.parseBoolean(properties.getProperty("compileFilters"));
+        FilterFactory filterFactory = injector.getInstance(FilterFactory.class);
+        for (String expression : new HashSet<>(Arrays.asList(properties.getProperty("serveFilters").split(";")))) {
+            filters.put(expression, filterFactory.get(expression, compileFilters));
+        }
+        filters.putIfAbsent(properties.getProperty("filters"), filterFactory.get(properties.getProperty("filters"), compileFilters));
+
+        int port = Integer.parseInt(properties.getProperty("servePort"));
+        int threads = Integer.parseInt(properties.getProperty("serveThreads"));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/recommend", exchange -> handle(exchange, this::recommend));
+        server.createContext("/stats", exchange -> handle(exchange, query -> stats()));
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            executor.shutdown();
+            stopped.countDown();
+        }));
+
+        server.start();
+        LOG.log(Level.INFO, "serving {0} recommenders on port {1}", new Object[]{recommenders.size(), Integer.toString(port)});
+        stopped.await();
+    }
+
+    private String recommend(Map<String, String> query) throws IOException {
+        long start = System.nanoTime();
+
+        String recName = query.get("rec");
+        FastRecommender<String, String> recommender = recommenders.get(recName);
+        if (recommender == null) {
+            throw new NotFoundException("recommender " + recName + " unknown");
+        }
+
+        String user = query.get("user");
+        int uidx = user == null ? -1 : users.user2uidx(user);
+        if (uidx < 0) {
+            throw new NotFoundException("user " + user + " unknown");
+        }
+
+        int maxLength = Integer.parseInt(query.getOrDefault("n", properties.getProperty("maxLength")));
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("n must be positive, got " + maxLength);
+        }
+        String expression = query.getOrDefault("filters", properties.getProperty("filters"));
+        Function<String, IntPredicate> userFilter = filters.get(expression);
+        if (userFilter == null) {
+            throw new IllegalArgumentException("filters " + expression + " not in serveFilters");
+        }
+
+        IntPredicate filter = userFilter.apply(user);
+        FastRecommendation recommendation;
+        try {
+            recommendation = recommender.getRecommendation(uidx, maxLength, filter);
+        } finally {
+            CompiledFilter.release(filter);
+        }
+
+        StringBuilder response = new StringBuilder();
+        for (Tuple2id iv : recommendation.getIidxs()) {
+            response.append(items.iidx2item(iv.v1)).append('\t').append(iv.v2).append('\n');
+        }
+        String body = response.toString();
+        latencies.get(recName).record(System.nanoTime() - start);
+
+        return body;
+    }
+
+    private String stats() {
+        StringBuilder response = new StringBuilder("recommender\trequests\tmean.us\tp50.us\tp90.us\tp99.us\tmax.us\n");
+        latencies.forEach((recName, latency) -> response
+                .append(recName)
+                .append('\t').append(latency.getCount())
+                .append('\t').append((long) latency.getMean() / 1_000)
+                .append('\t').append(latency.getPercentile(0.50) / 1_000)
+                .append('\t').append(latency.getPercentile(0.90) / 1_000)
+                .append('\t').append(latency.getPercentile(0.99) / 1_000)
+                .append('\t').append(latency.getMax() / 1_000)
+                .append('\n'));
+        return response.toString();
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        int status;
+        String response;
+        try {
+            response = handler.handle(parseQuery(exchange.getRequestURI().getRawQuery()));
+            status = 200;
+        } catch (NotFoundException ex) {
+            response = ex.getMessage() + "\n";
+            status = 404;
+        } catch (IllegalArgumentException ex) {
+            response = ex + "\n";
+            status = 400;
+        } catch (IOException | RuntimeException ex) {
+            LOG.log(Level.SEVERE, "request " + exchange.getRequestURI() + " failed", ex);
+            response = ex + "\n";
+            status = 500;
+        }
+
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return query;
+    }
+
+    private interface Handler {
+
+        String handle(Map<String, String> query) throws IOException;
+    }
+
+    private static class NotFoundException extends RuntimeException {
+
+        public NotFoundException(String message) {
+            super(message);
+        }
+    }
+}
@@ -13,7 +13,6 @@ import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
-import org.jooq.lambda.Unchecked;
 import org.jooq.lambda.tuple.Tuple3;
 import org.ranksys.core.index.fast.FastItemIndex;
 import org.ranksys.core.index.fast.FastUserIndex;
@@ -22,13 +21,17 @@ import org.ranksys.core.index.fast.SimpleFastUserIndex;
 import org.ranksys.core.preference.fast.FastPreferenceData;
 import org.ranksys.core.preference.fast.SimpleFastPreferenceData;
 import org.ranksys.evaluation.runner.RecommenderRunner;
-import org.ranksys.evaluation.runner.fast.FastFilterRecommenderRunner;
-import org.ranksys.evaluation.runner.fast.FastFilters;
 import org.ranksys.formats.index.ItemsReader;
 import org.ranksys.formats.index.UsersReader;
 import org.ranksys.formats.preference.SimpleRatingPreferencesReader;
 import org.ranksys.formats.rec.*;
 import org.ranksys.mehta.factories.FilterFactory;
+import org.ranksys.mehta.formats.preference.PreferenceDeltas;
+import org.ranksys.mehta.formats.rec.BinaryRecommendationFormat;
+import org.ranksys.mehta.formats.rec.ParallelZipRecommendationFormat;
+import org.ranksys.mehta.formats.preference.PreferenceSnapshot;
+import org.ranksys.mehta.runner.MehtaRecommenderRunner;
+import org.ranksys.mehta.runner.Shard;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -36,6 +39,8 @@ import java.nio.file.Paths;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.function.IntPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toSet;
@@ -47,10 +52,18 @@ import static org.ranksys.formats.parsing.Parsers.sp;
  */
 public class MehtaModule extends AbstractModule {
 
+    private static final Logger LOG = Logger.getLogger(MehtaModule.class.getName());
+
     private final MehtaProperties properties;
+    private final SharedData shared;
 
     public MehtaModule(MehtaProperties properties) {
+        this(properties, new SharedData());
+    }
+
+    public MehtaModule(MehtaProperties properties, SharedData shared) {
         this.properties = properties;
+        this.shared = shared;
     }
 
     @Override
@@ -62,13 +75,15 @@ public class MehtaModule extends AbstractModule {
     @Provides
     @Singleton
     public FastUserIndex<String> getUsers(@Named("usersFile") String usersFile) throws IOException {
-        return SimpleFastUserIndex.load(UsersReader.read(usersFile, sp));
+        return shared.get("users\n" + MehtaProperties.fingerprint(Paths.get(usersFile)),
+                key -> SimpleFastUserIndex.load(UsersReader.read(usersFile, sp)));
     }
 
     @Provides
     @Singleton
     public FastItemIndex<String> getItems(@Named("itemsFile") String itemsFile) throws IOException {
-        return SimpleFastItemIndex.load(ItemsReader.read(itemsFile, sp));
+        return shared.get("items\n" + MehtaProperties.fingerprint(Paths.get(itemsFile)),
+                key -> SimpleFastItemIndex.load(ItemsReader.read(itemsFile, sp)));
     }
 
     @Provides
@@ -76,8 +91,56 @@ public class MehtaModule extends AbstractModule {
     @Named("trainPreferences")
     public FastPreferenceData<String, String> getTrainPreferences(
             @Named("trainPreferencesFile") String trainPreferencesFile,
+            PreferenceDeltas deltas,
             FastUserIndex<String> users, FastItemIndex<String> items) throws IOException {
-        return getPreferences(trainPreferencesFile, users, items);
+        return shared.get("preferences\n" + deltas.getFingerprint(deltas.size()),
+                key -> loadTrainPreferences(trainPreferencesFile, deltas, users, items));
+    }
+
+    private FastPreferenceData<String, String> loadTrainPreferences(
+            String trainPreferencesFile,
+            PreferenceDeltas deltas,
+            FastUserIndex<String> users, FastItemIndex<String> items) throws IOException {
+        if (deltas.size() == 0) {
+            return getPreferences(trainPreferencesFile, users, items);
+        }
+
+        boolean snapshots = Boolean.parseBoolean(properties.getProperty("preferenceSnapshots"));
+        int applied = snapshots ? deltas.getLastSnapshot() : -1;
+
+        FastPreferenceData<String, String> preferences;
+        if (applied < 0) {
+            preferences = getPreferences(trainPreferencesFile, users, items);
+            applied = 0;
+        } else {
+            LOG.log(Level.INFO, "loading snapshot {0}", deltas.getSnapshot(applied).getSnapshotFile());
+            preferences = deltas.getSnapshot(applied).read(users, items);
+        }
+
+        if (applied < deltas.size()) {
+            preferences = deltas.apply(preferences, applied, users, items);
+            if (snapshots) {
+                PreferenceSnapshot snapshot = deltas.getSnapshot(deltas.size());
+                try {
+                    snapshot.write(preferences);
+                } catch (IOException ex) {
+                    LOG.log(Level.WARNING, "could not write snapshot " + snapshot.getSnapshotFile(), ex);
+                }
+            }
+        }
+
+        return preferences;
+    }
+
+    @Provides
+    @Singleton
+    public PreferenceDeltas getTrainDeltas(
+            @Named("trainPreferencesFile") String trainPreferencesFile,
+            @Named("usersFile") String usersFile,
+            @Named("itemsFile") String itemsFile) {
+        return new PreferenceDeltas(Paths.get(trainPreferencesFile),
+                Paths.get(usersFile), Paths.get(itemsFile), properties.getTrainDeltaFiles(),
+                PreferenceDeltas.MergePolicy.valueOf(properties.getProperty("deltaMerge").toUpperCase()));
     }
 
     @Provides
@@ -86,7 +149,7 @@ public class MehtaModule extends AbstractModule {
     public FastPreferenceData<String, String> getTestPreferences(
             @Named("testPreferencesFile") String testPreferencesFile,
             FastUserIndex<String> users, FastItemIndex<String> items) throws IOException {
-        return getPreferences(testPreferencesFile, users, items);
+        return getSharedPreferences(testPreferencesFile, users, items);
     }
 
     @Provides
@@ -95,7 +158,7 @@ public class MehtaModule extends AbstractModule {
     public FastPreferenceData<String, String> getTotalPreferences(
             @Named("totalPreferencesFile") String totalPreferencesFile,
             FastUserIndex<String> users, FastItemIndex<String> items) throws IOException {
-        return getPreferences(totalPreferencesFile, users, items);
+        return getSharedPreferences(totalPreferencesFile, users, items);
     }
 
     @Provides
@@ -121,23 +184,25 @@ public class MehtaModule extends AbstractModule {
             @Named("targetUsers") Set<String> targetUsers,
             Function<String, IntPredicate> filters,
             @Named("maxLength") int maxLength) {
-        return new FastFilterRecommenderRunner<>(users, items, targetUsers.stream(),
+        Shard shard = properties.getShard();
+        return new MehtaRecommenderRunner<>(users, items, targetUsers.stream().filter(shard::contains),
                 filters, maxLength);
     }
 
     @Provides
     public Function<String, IntPredicate> getFilters(
-            @Named("filters") String filters, FilterFactory filterFactory) {
-        return Stream.of(filters.split(","))
-                .map(Unchecked.function(filterFactory::create))
-                .reduce(FastFilters::and)
-                .orElseGet(FastFilters::all);
+            @Named("filters") String filters,
+            @Named("compileFilters") boolean compileFilters,
+            FilterFactory filterFactory) throws IOException {
+        return filterFactory.get(filters, compileFilters);
     }
 
     @Provides
     public RecommendationFormat<String, String> getRecommendationFormat(
             @Named("format") String formatName,
-            @Named("ignoreScores") boolean ignoreScores) {
+            @Named("ignoreScores") boolean ignoreScores,
+            @Named("compressionThreads") int compressionThreads,
+            Provider<FastItemIndex<String>> items) {
         RecommendationFormat<String, String> format;
 
         switch (formatName) {
@@ -147,12 +212,18 @@ public class MehtaModule extends AbstractModule {
             case "zip":
                 format = new ZipRecommendationFormat<>(sp, sp, ignoreScores);
                 break;
+            case "pzip":
+                format = new ParallelZipRecommendationFormat<>(sp, sp, ignoreScores, compressionThreads);
+                break;
             case "simple":
                 format = new SimpleRecommendationFormat<>(sp, sp);
                 break;
             case "trec":
                 format = new TRECRecommendationFormat<>(sp, sp);
                 break;
+            case "binary":
+                format = new BinaryRecommendationFormat<>(items.get(), sp, sp);
+                break;
             default:
                 format = null;
         }
@@ -160,9 +231,41 @@ public class MehtaModule extends AbstractModule {
         return format;
     }
 
+    private FastPreferenceData<String, String> getSharedPreferences(
+            String preferencesFile,
+            FastUserIndex<String> users, FastItemIndex<String> items) throws IOException {
+        String fingerprint = MehtaProperties.fingerprint(Paths.get(properties.getProperty("usersFile")),
+                Paths.get(properties.getProperty("itemsFile")), Paths.get(preferencesFile));
+        return shared.get("preferences\n" + fingerprint, key -> getPreferences(preferencesFile, users, items));
+    }
+
     public FastPreferenceData<String, String> getPreferences(
             String preferencesFile,
             FastUserIndex<String> users, FastItemIndex<String> items) throws IOException {
+        if (!Boolean.parseBoolean(properties.getProperty("preferenceSnapshots"))) {
+            return readPreferences(preferencesFile, users, items);
+        }
+
+        PreferenceSnapshot snapshot = new PreferenceSnapshot(Paths.get(preferencesFile),
+                Paths.get(properties.getProperty("usersFile")), Paths.get(properties.getProperty("itemsFile")));
+        if (snapshot.isValid()) {
+            LOG.log(Level.INFO, "loading snapshot {0}", snapshot.getSnapshotFile());
+            return snapshot.read(users, items);
+        }
+
+        FastPreferenceData<String, String> preferences = readPreferences(preferencesFile, users, items);
+        try {
+            snapshot.write(preferences);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "could not write snapshot " + snapshot.getSnapshotFile(), ex);
+        }
+
+        return preferences;
+    }
+
+    private FastPreferenceData<String, String> readPreferences(
+            String preferencesFile,
+            FastUserIndex<String> users, FastItemIndex<String> items) throws IOException {
         Stream<Tuple3<String, String, Double>> tuples = SimpleRatingPreferencesReader.get()
                 .read(preferencesFile, sp, sp);
 
@@ -20,6 +20,7 @@ import java.util.stream.Stream;
 import static java.lang.Boolean.parseBoolean;
 import static java.lang.Double.parseDouble;
 import static java.lang.Integer.parseInt;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toMap;
 
 /**
@@ -49,10 +50,23 @@ public class MehtaParameters {
         });
     }
 
+    public MehtaParameters without(String... keys) {
+        Map<String, String> subParams = new HashMap<>(parameters);
+        for (String key : keys) {
+            subParams.remove(key);
+        }
+
+        return new MehtaParameters(parent, name, subParams);
+    }
+
     public String name() {
         return name;
     }
 
+    public boolean contains(String key) {
+        return parameters.containsKey(key);
+    }
+
     public Optional<String> get(String key) {
         if (!parameters.containsKey(key)) {
             LOG.log(Level.SEVERE, "Parameter {0}{1} not present", new Object[]{parent, key});
@@ -114,6 +128,14 @@ public class MehtaParameters {
         return Objects.equals(this.name, other.name) && Objects.equals(this.parameters, other.parameters);
     }
 
+    @Override
+    public String toString() {
+        return Stream.concat(Stream.of(name), parameters.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(e -> e.getKey() + "=" + e.getValue()))
+                .collect(joining(" "));
+    }
+
     private static final Predicate<String> IS_EMPTY = String::isEmpty;
     private static final Predicate<String> IS_COMMENT_LINE = line -> line.startsWith("#");
     private static final Supplier<Predicate<String>> IS_COMMENT_BLOCK_SUPPLIER = () -> {
@@ -7,10 +7,20 @@
  */
 package org.ranksys.mehta.config;
 
+import org.ranksys.mehta.runner.Shard;
+
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
 
 /**
  *
@@ -22,6 +32,24 @@ public class MehtaProperties extends java.util.Properties {
     private static final String DEFAULT_MAX_LENGTH = "100";
     private static final String DEFAULT_FILTERS = "notInTrain";
     private static final String DEFAULT_IGNORE_SCORES = "false";
+    private static final String DEFAULT_CONCURRENT_RECOMMENDERS = "1";
+    private static final String DEFAULT_CACHE_ENTRIES = "32";
+    private static final String DEFAULT_CACHE_MEMORY = "1024";
+    private static final String DEFAULT_REUSE_MODELS = "false";
+    private static final String DEFAULT_TRAIN_DELTA_FILES = "";
+    private static final String DEFAULT_DELTA_MERGE = "replace";
+    private static final String DEFAULT_PREFERENCE_SNAPSHOTS = "true";
+    private static final String DEFAULT_FEATURE_SNAPSHOTS = "false";
+    private static final String DEFAULT_COMPILE_FILTERS = "true";
+    private static final String DEFAULT_PERSIST_NEIGHBORHOODS = "false";
+    private static final String DEFAULT_BATCH_SCORING = "false";
+    private static final String DEFAULT_CHECKPOINT_USERS = "0";
+    private static final String DEFAULT_SHARD = "0/1";
+    private static final String DEFAULT_SERVE_PORT = "8080";
+    private static final String DEFAULT_EVALUATION_CHUNK_SIZE = "1000";
+    private static final String DEFAULT_METRICS_OUTPUT = "-";
+    private static final String DEFAULT_CONCURRENT_EVALUATIONS = "1";
+    private static final String DEFAULT_METRICS_OUTPUT_FORMAT = "text";
 
     private final Path basePath;
 
@@ -40,10 +68,32 @@ public class MehtaProperties extends java.util.Properties {
         putIfAbsent("trainPreferencesFile", basePath.resolve("train.data").toString());
         putIfAbsent("testPreferencesFile", basePath.resolve("test.data").toString());
         putIfAbsent("totalPreferencesFile", basePath.resolve("total.data").toString());
+        putIfAbsent("trainDeltaFiles", DEFAULT_TRAIN_DELTA_FILES);
+        putIfAbsent("deltaMerge", DEFAULT_DELTA_MERGE);
         putIfAbsent("maxLength", DEFAULT_MAX_LENGTH);
         putIfAbsent("filters", DEFAULT_FILTERS);
         putIfAbsent("format", DEFAULT_FORMAT);
         putIfAbsent("ignoreScores", DEFAULT_IGNORE_SCORES);
+        putIfAbsent("compressionThreads", Integer.toString(Runtime.getRuntime().availableProcessors()));
+        putIfAbsent("concurrentRecommenders", DEFAULT_CONCURRENT_RECOMMENDERS);
+        putIfAbsent("cacheEntries", DEFAULT_CACHE_ENTRIES);
+        putIfAbsent("cacheMemory", DEFAULT_CACHE_MEMORY);
+        putIfAbsent("reuseModels", DEFAULT_REUSE_MODELS);
+        putIfAbsent("preferenceSnapshots", DEFAULT_PREFERENCE_SNAPSHOTS);
+        putIfAbsent("featureSnapshots", DEFAULT_FEATURE_SNAPSHOTS);
+        putIfAbsent("compileFilters", DEFAULT_COMPILE_FILTERS);
+        putIfAbsent("persistNeighborhoods", DEFAULT_PERSIST_NEIGHBORHOODS);
+        putIfAbsent("batchScoring", DEFAULT_BATCH_SCORING);
+        putIfAbsent("checkpointUsers", DEFAULT_CHECKPOINT_USERS);
+        putIfAbsent("shard", DEFAULT_SHARD);
+        putIfAbsent("servePort", DEFAULT_SERVE_PORT);
+        putIfAbsent("serveThreads", Integer.toString(Runtime.getRuntime().availableProcessors()));
+        putIfAbsent("serveFilters", getProperty("filters"));
+        putIfAbsent("evaluationThreads", Integer.toString(Runtime.getRuntime().availableProcessors()));
+        putIfAbsent("evaluationChunkSize", DEFAULT_EVALUATION_CHUNK_SIZE);
+        putIfAbsent("metricsOutput", DEFAULT_METRICS_OUTPUT);
+        putIfAbsent("concurrentEvaluations", DEFAULT_CONCURRENT_EVALUATIONS);
+        putIfAbsent("metricsOutputFormat", DEFAULT_METRICS_OUTPUT_FORMAT);
 
         // create missing directories
         getPath("featurePath", "features").toFile().mkdir();
@@ -77,9 +127,101 @@ public class MehtaProperties extends java.util.Properties {
                 .resolve(model);
     }
 
+    public Path getModelFile(String kind, MehtaParameters params) throws IOException {
+        return getModelFile(kind, params + "\n" + getTrainFingerprint());
+    }
+
+    public Path getModelFile(String kind, String key) {
+        return getModelFile(kind + "-" + digest(kind + "\n" + key));
+    }
+
+    /**
+     * Last model trained with some parameters, to warm start the next
+     * training from. Models trained against a validation file are only
+     * continued while the file does not change, so that preferences that
+     * are held out for validation were never trained on.
+     *
+     * @param kind kind of model
+     * @param params parameters of the model
+     * @return model file
+     * @throws IOException when the validation file cannot be checked
+     */
+    public Path getLatestModelFile(String kind, MehtaParameters params) throws IOException {
+        String key = params.toString();
+        if (params.contains("validationFile")) {
+            key += "\n" + fingerprint(Paths.get(params.get("validationFile", "")));
+        }
+        return getModelFile(kind + "-" + digest(kind + "\n" + key) + ".latest");
+    }
+
+    public List<Path> getTrainDeltaFiles() {
+        return Stream.of(getProperty("trainDeltaFiles").split(","))
+                .map(String::trim)
+                .filter(file -> !file.isEmpty())
+                .map(file -> basePath.resolve(file))
+                .collect(toList());
+    }
+
+    /**
+     * Files users, items and preference data are loaded from, which key the
+     * data shared between configurations.
+     *
+     * @return data files
+     */
+    public List<Path> getDataFiles() {
+        List<Path> files = new ArrayList<>();
+        for (String key : new String[]{"usersFile", "itemsFile", "trainPreferencesFile", "testPreferencesFile", "totalPreferencesFile"}) {
+            files.add(Paths.get(getProperty(key)).toAbsolutePath());
+        }
+        getTrainDeltaFiles().forEach(file -> files.add(file.toAbsolutePath()));
+        return files;
+    }
+
+    public String getTrainFingerprint() throws IOException {
+        return fingerprint(
+                Paths.get(getProperty("usersFile")),
+                Paths.get(getProperty("itemsFile")),
+                Paths.get(getProperty("trainPreferencesFile")))
+                + fingerprint(getTrainDeltaFiles().toArray(new Path[0]))
+                + (getTrainDeltaFiles().isEmpty() ? "" : "merge=" + getProperty("deltaMerge") + "\n");
+    }
+
+    public static String fingerprint(Path... paths) throws IOException {
+        StringBuilder fingerprint = new StringBuilder();
+        for (Path path : paths) {
+            fingerprint.append(path.toAbsolutePath())
+                    .append('\t').append(Files.size(path))
+                    .append('\t').append(Files.getLastModifiedTime(path).toMillis())
+                    .append('\n');
+        }
+        return fingerprint.toString();
+    }
+
+    private static String digest(String s) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
     public Path getRecommendationFile(String recommendationName) {
         return getPath("recommendationPath", "recommendations")
                 .resolve(recommendationName + ".rec");
     }
 
+    public Shard getShard() {
+        return Shard.parse(getProperty("shard"));
+    }
+
+    public Path getStatsFile(String recommendationName) {
+        return getPath("recommendationPath", "recommendations")
+                .resolve(recommendationName + ".stats");
+    }
+
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.config;
+
+import org.jooq.lambda.Unchecked;
+import org.jooq.lambda.fi.util.function.CheckedFunction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Users, items and preference data shared by the injectors of several
+ * configurations in the same JVM. Entries are keyed by the fingerprint of
+ * the files they are loaded from, so configurations over the same dataset
+ * load it only once. Every entry is a future completed by the first thread
+ * that asks for it, so that loads of different entries do not block each
+ * other and other threads asking for the same entry wait for it. Every
+ * configuration gets its own view with
+ * {@link #forOwner(String)}, which records the entries it uses, and
+ * {@link #release(String, Predicate)} drops the entries that no other
+ * configuration uses once it is no longer needed.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class SharedData {
+
+    private static final ThreadLocal<Set<String>> LOADING = ThreadLocal.withInitial(HashSet::new);
+
+    private final Map<String, CompletableFuture<Object>> data;
+    private final Map<String, Set<String>> owners;
+    private final String owner;
+
+    public SharedData() {
+        this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), "");
+    }
+
+    private SharedData(Map<String, CompletableFuture<Object>> data, Map<String, Set<String>> owners, String owner) {
+        this.data = data;
+        this.owners = owners;
+        this.owner = owner;
+    }
+
+    /**
+     * View of the same data whose entries are recorded as used by an owner.
+     *
+     * @param owner owner, such as a configuration file
+     * @return view of the data
+     */
+    public SharedData forOwner(String owner) {
+        return new SharedData(data, owners, owner);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, CheckedFunction<String, T> loader) throws IOException {
+        owners.computeIfAbsent(owner, o -> ConcurrentHashMap.newKeySet()).add(key);
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loaded = data.putIfAbsent(key, future);
+        if (loaded != null) {
+            if (!loaded.isDone() && LOADING.get().contains(key)) {
+                throw new IllegalStateException("recursive load of " + key);
+            }
+            try {
+                return (T) loaded.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) ex.getCause()).getCause();
+                }
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                if (ex.getCause() instanceof Error) {
+                    throw (Error) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+
+        LOADING.get().add(key);
+        try {
+            T value = Unchecked.function(loader).apply(key);
+            future.complete(value);
+            return value;
+        } catch (UncheckedIOException ex) {
+            fail(key, future, ex);
+            throw ex.getCause();
+        } catch (RuntimeException | Error ex) {
+            fail(key, future, ex);
+            throw ex;
+        } finally {
+            LOADING.get().remove(key);
+        }
+    }
+
+    /**
+     * Fails a load, so that the threads waiting for it fail too and later
+     * calls try again.
+     */
+    private void fail(String key, CompletableFuture<Object> future, Throwable ex) {
+        data.remove(key, future);
+        future.completeExceptionally(ex);
+    }
+
+    /**
+     * Releases the entries used by an owner that no other owner uses.
+     *
+     * @param owner owner
+     * @param retain keys to keep anyway, such as those of owners to come
+     * @return number of entries released
+     */
+    public synchronized int release(String owner, Predicate<String> retain) {
+        Set<String> keys = owners.remove(owner);
+        if (keys == null) {
+            return 0;
+        }
+
+        int released = 0;
+        for (String key : keys) {
+            if (!retain.test(key) && owners.values().stream().noneMatch(other -> other.contains(key)) && data.remove(key) != null) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    public int size() {
+        return data.size();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.evaluation;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Mutable reduction of a sequential stream in parallel chunks. The stream is
+ * consumed by the calling thread and cut into chunks that are accumulated by
+ * the workers of an executor. At most two chunks per worker are in flight, so
+ * the memory used depends on the number of workers and not on the length of
+ * the stream.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class ChunkedEvaluator {
+
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final int chunkSize;
+
+    public ChunkedEvaluator(ExecutorService executor, int numThreads, int chunkSize) {
+        this.executor = executor;
+        this.maxInFlight = 2 * numThreads;
+        this.chunkSize = chunkSize;
+    }
+
+    public <T, A> A collect(Stream<T> stream, Supplier<A> supplier, BiConsumer<A, T> accumulator, BiConsumer<A, A> combiner) throws InterruptedException {
+        A result = supplier.get();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Iterator<T> it = stream.iterator();
+        List<T> chunk = new ArrayList<>(chunkSize);
+        while (it.hasNext() && failure.get() == null) {
+            chunk.add(it.next());
+            if (chunk.size() == chunkSize || !it.hasNext()) {
+                List<T> submitted = chunk;
+                chunk = new ArrayList<>(chunkSize);
+
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        A partial = supplier.get();
+                        submitted.forEach(t -> accumulator.accept(partial, t));
+                        synchronized (result) {
+                            combiner.accept(result, partial);
+                        }
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        inFlight.acquire(maxInFlight);
+
+        Throwable ex = failure.get();
+        if (ex instanceof RuntimeException) {
+            throw (RuntimeException) ex;
+        } else if (ex instanceof Error) {
+            throw (Error) ex;
+        } else if (ex != null) {
+            throw new IllegalStateException(ex);
+        }
+
+        return result;
+    }
+}
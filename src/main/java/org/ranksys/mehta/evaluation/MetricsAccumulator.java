@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.evaluation;
+
+import org.jooq.lambda.tuple.Tuple2;
+import org.ranksys.core.Recommendation;
+import org.ranksys.metrics.RecommendationMetric;
+import org.ranksys.metrics.basic.AverageRecommendationMetric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.ObjDoubleConsumer;
+
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+/**
+ * Averages of several recommendation metrics filled in a single pass over
+ * the recommendations.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class MetricsAccumulator<U, I> {
+
+    private final List<String> names;
+    private final List<AverageRecommendationMetric<U, I>> metrics;
+
+    public MetricsAccumulator(Collection<Tuple2<String, RecommendationMetric<U, I>>> recommendationMetrics, int numUsers) {
+        this.names = new ArrayList<>(recommendationMetrics.size());
+        this.metrics = new ArrayList<>(recommendationMetrics.size());
+        recommendationMetrics.forEach(t -> {
+            names.add(t.v1);
+            metrics.add(new AverageRecommendationMetric<>(t.v2, numUsers));
+        });
+    }
+
+    public void add(Recommendation<U, I> recommendation, ObjDoubleConsumer<String> userValues) {
+        for (int i = 0; i < metrics.size(); i++) {
+            userValues.accept(names.get(i), metrics.get(i).addAndEvaluate(recommendation));
+        }
+    }
+
+    public void combine(MetricsAccumulator<U, I> other) {
+        for (int i = 0; i < metrics.size(); i++) {
+            metrics.get(i).combine(other.metrics.get(i));
+        }
+    }
+
+    public List<Tuple2<String, Double>> evaluate() {
+        List<Tuple2<String, Double>> values = new ArrayList<>(metrics.size());
+        for (int i = 0; i < metrics.size(); i++) {
+            values.add(tuple(names.get(i), metrics.get(i).evaluate()));
+        }
+        return values;
+    }
+}
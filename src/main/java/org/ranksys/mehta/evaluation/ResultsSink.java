@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.evaluation;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sink for metric results. Rows are buffered per thread and handed in large
+ * blocks to a single writer thread, so that evaluating threads never contend
+ * on the output stream.
+ *
+ * Results are written either as tab-separated text lines or in a compact
+ * binary format. The binary format is a sequence of records starting with a
+ * tag byte: {@code 0} declares a recommender-metric key (int id, UTF key
+ * "recommender\tmetric") and {@code 1} is a result row (int key id, UTF user,
+ * double value). Summary rows have an empty user.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class ResultsSink implements Closeable {
+
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final byte[] END = new byte[0];
+
+    private final OutputStream out;
+    private final boolean binary;
+    private final boolean closeOut;
+    private final BlockingQueue<byte[]> queue;
+    private final Thread writer;
+    private final List<Buffer> buffers;
+    private final ThreadLocal<Buffer> localBuffer;
+    private final Map<String, Integer> keys;
+    private volatile IOException failure;
+
+    public ResultsSink(OutputStream out, boolean binary, boolean closeOut) {
+        this.out = new BufferedOutputStream(out, BLOCK_SIZE);
+        this.binary = binary;
+        this.closeOut = closeOut;
+        this.queue = new ArrayBlockingQueue<>(256);
+        this.buffers = new CopyOnWriteArrayList<>();
+        this.localBuffer = ThreadLocal.withInitial(() -> {
+            Buffer buffer = new Buffer();
+            buffers.add(buffer);
+            return buffer;
+        });
+        this.keys = new HashMap<>();
+        this.failure = null;
+
+        this.writer = new Thread(this::drain, "results-sink");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void add(String recName, String metricName, String user, double value) {
+        Buffer buffer = localBuffer.get();
+        synchronized (buffer) {
+            buffer.add(recName, metricName, user, value);
+            if (buffer.size() >= BLOCK_SIZE) {
+                enqueue(buffer.take());
+            }
+        }
+    }
+
+    public void flush() {
+        for (Buffer buffer : buffers) {
+            synchronized (buffer) {
+                if (buffer.size() > 0) {
+                    enqueue(buffer.take());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        enqueue(END);
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (closeOut) {
+            out.close();
+        } else {
+            out.flush();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void enqueue(byte[] block) {
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+        try {
+            queue.put(block);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void drain() {
+        try {
+            byte[] block;
+            while ((block = queue.take()) != END) {
+                if (failure == null) {
+                    try {
+                        out.write(block);
+                    } catch (IOException ex) {
+                        failure = ex;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int keyId(String recName, String metricName) throws IOException {
+        String key = recName + "\t" + metricName;
+        synchronized (keys) {
+            Integer id = keys.get(key);
+            if (id == null) {
+                id = keys.size();
+                keys.put(key, id);
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream data = new DataOutputStream(bytes);
+                data.writeByte(0);
+                data.writeInt(id);
+                data.writeUTF(key);
+                enqueue(bytes.toByteArray());
+            }
+            return id;
+        }
+    }
+
+    private class Buffer {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(BLOCK_SIZE + 1024);
+        private final DataOutputStream data = new DataOutputStream(bytes);
+
+        public void add(String recName, String metricName, String user, double value) {
+            try {
+                if (binary) {
+                    int id = keyId(recName, metricName);
+                    data.writeByte(1);
+                    data.writeInt(id);
+                    data.writeUTF(user);
+                    data.writeDouble(value);
+                } else {
+                    String row = recName + "\t" + metricName + "\t" + user + "\t" + value + "\n";
+                    data.write(row.getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        public int size() {
+            return bytes.size();
+        }
+
+        public byte[] take() {
+            byte[] block = bytes.toByteArray();
+            bytes.reset();
+            return block;
+        }
+    }
+}
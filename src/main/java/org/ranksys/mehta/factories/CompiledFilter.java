@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.factories;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import java.util.BitSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+
+/**
+ * Filter expression compiled into bitmaps. Item-level conditions are folded
+ * into a single bitmap of allowed items shared by all users, and the training
+ * items of a user are set in an exclusion bitmap when its predicate is
+ * created.
+ *
+ * Every predicate owns its exclusion bitmap, so predicates of different users
+ * can be used at the same time from any thread. Bitmaps are taken from a pool
+ * and should be given back with {@link #release(IntPredicate)} once the
+ * predicate is no longer used; a predicate that is never released is simply
+ * garbage collected.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class CompiledFilter implements Function<String, IntPredicate> {
+
+    private final FastUserIndex<String> users;
+    private final BitSet allowed;
+    private final FastPreferenceData<String, String> excluded;
+    private final Queue<BitSet> pool;
+
+    public CompiledFilter(FastUserIndex<String> users, BitSet allowed, FastPreferenceData<String, String> excluded) {
+        this.users = users;
+        this.allowed = allowed;
+        this.excluded = excluded;
+        this.pool = new ConcurrentLinkedQueue<>();
+    }
+
+    @Override
+    public IntPredicate apply(String user) {
+        int uidx = users.user2uidx(user);
+        if (excluded == null || uidx < 0) {
+            return allowed::get;
+        }
+
+        return new UserPredicate(uidx);
+    }
+
+    /**
+     * Gives the exclusion bitmap of a predicate back to the pool of its filter.
+     * The predicate must not be used afterwards. Predicates that do not come
+     * from a compiled filter are ignored.
+     *
+     * @param predicate predicate returned by {@link #apply(String)}
+     */
+    public static void release(IntPredicate predicate) {
+        if (predicate instanceof CompiledFilter.UserPredicate) {
+            ((CompiledFilter.UserPredicate) predicate).release();
+        }
+    }
+
+    private class UserPredicate implements IntPredicate {
+
+        private final int uidx;
+        private BitSet userExcluded;
+
+        public UserPredicate(int uidx) {
+            this.uidx = uidx;
+            BitSet bits = pool.poll();
+            this.userExcluded = bits != null ? bits : new BitSet(allowed.size());
+            for (IntIterator iidxs = excluded.getUidxIidxs(uidx); iidxs.hasNext();) {
+                userExcluded.set(iidxs.nextInt());
+            }
+        }
+
+        @Override
+        public boolean test(int iidx) {
+            return allowed.get(iidx) && !userExcluded.get(iidx);
+        }
+
+        private synchronized void release() {
+            if (userExcluded == null) {
+                return;
+            }
+            for (IntIterator iidxs = excluded.getUidxIidxs(uidx); iidxs.hasNext();) {
+                userExcluded.clear(iidxs.nextInt());
+            }
+            pool.offer(userExcluded);
+            userExcluded = null;
+        }
+    }
+}
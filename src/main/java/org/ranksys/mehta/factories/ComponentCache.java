@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.factories;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.jooq.lambda.tuple.Tuple2;
+import org.ranksys.mehta.config.MehtaParameters;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+/**
+ * Run-scoped cache of components created by the factories, keyed by the
+ * parameters that created them. Entries are evicted in least-recently-used
+ * order when either the number of entries or their estimated size in bytes
+ * exceed the configured limits.
+ *
+ * Concurrent requests of the same component wait for the first one to
+ * create it. If creation fails, with an exception or an error, the entry is
+ * dropped and the failure is rethrown to the creator and to every waiter.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+@Singleton
+public class ComponentCache {
+
+    private static final Logger LOG = Logger.getLogger(ComponentCache.class.getName());
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Map<Tuple2<String, MehtaParameters>, Entry> entries;
+    private long weight;
+
+    @Inject
+    public ComponentCache(
+            @Named("cacheEntries") int maxEntries,
+            @Named("cacheMemory") long maxMemoryMB) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxMemoryMB * 1024 * 1024;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.weight = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> get(String kind, MehtaParameters params,
+            Function<MehtaParameters, Optional<T>> factory, ToLongFunction<T> weigher) {
+        if (maxEntries <= 0) {
+            return factory.apply(params);
+        }
+
+        Tuple2<String, MehtaParameters> key = tuple(kind, params);
+        Entry entry;
+        boolean owner;
+        synchronized (this) {
+            entry = entries.get(key);
+            owner = entry == null;
+            if (owner) {
+                entry = new Entry();
+                entries.put(key, entry);
+            }
+        }
+
+        if (!owner) {
+            LOG.log(Level.INFO, "reusing {0} {1}", new Object[]{kind, params});
+            try {
+                return (Optional<T>) entry.value.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof Error) {
+                    throw (Error) ex.getCause();
+                }
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+
+        Optional<T> value;
+        try {
+            value = factory.apply(params);
+        } catch (Throwable ex) {
+            synchronized (this) {
+                entries.remove(key);
+            }
+            entry.value.completeExceptionally(ex);
+            throw ex;
+        }
+        long valueWeight = value.map(weigher::applyAsLong).orElse(0L);
+
+        // completed under the lock, so that the entry cannot be evicted
+        // before its weight is accounted
+        synchronized (this) {
+            entry.weight = valueWeight;
+            entry.value.complete(value);
+            weight += valueWeight;
+            evict();
+        }
+
+        return value;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getWeight() {
+        return weight;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Tuple2<String, MehtaParameters>, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+            Map.Entry<Tuple2<String, MehtaParameters>, Entry> e = it.next();
+            if (!e.getValue().value.isDone()) {
+                continue;
+            }
+            it.remove();
+            weight -= e.getValue().weight;
+            LOG.log(Level.INFO, "evicting {0} {1}", new Object[]{e.getKey().v1, e.getKey().v2});
+        }
+    }
+
+    private static class Entry {
+
+        private final CompletableFuture<Optional<?>> value = new CompletableFuture<>();
+        private long weight = 0;
+    }
+}
@@ -8,47 +8,106 @@
 package org.ranksys.mehta.factories;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import org.jooq.lambda.Unchecked;
+import org.jooq.lambda.tuple.Tuple3;
 import org.ranksys.core.feature.fast.FastFeatureData;
 import org.ranksys.core.feature.fast.SimpleFastFeatureData;
 import org.ranksys.core.index.fast.FastFeatureIndex;
 import org.ranksys.core.index.fast.FastItemIndex;
 import org.ranksys.core.index.fast.SimpleFastFeatureIndex;
+import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
 import static org.ranksys.core.util.FastStringSplitter.split;
-import org.ranksys.formats.feature.SimpleFeaturesReader;
 import static org.ranksys.formats.parsing.Parsers.sp;
 import org.ranksys.mehta.config.MehtaProperties;
+import org.ranksys.mehta.formats.feature.FeatureSnapshot;
 
 /**
+ * Run-scoped registry of item feature data. Each feature file is parsed once,
+ * in a single pass, and the resulting feature data is shared by every filter
+ * and recommender that asks for it.
  *
  * @author Saúl Vargas (Saul@VargasSandoval.es)
  */
+@Singleton
 public class FeatureDataFactory {
 
+    private static final Logger LOG = Logger.getLogger(FeatureDataFactory.class.getName());
+
     private final MehtaProperties properties;
     private final FastItemIndex<String> items;
+    private final boolean featureSnapshots;
+    private final Map<String, FastFeatureData<String, String, Double>> featureData;
 
     @Inject
     public FeatureDataFactory(
             MehtaProperties properties, 
-            FastItemIndex<String> items) {
+            FastItemIndex<String> items,
+            @Named("featureSnapshots") boolean featureSnapshots) {
         this.properties = properties;
         this.items = items;
+        this.featureSnapshots = featureSnapshots;
+        this.featureData = new ConcurrentHashMap<>();
     }
 
     public FastFeatureData<String, String, Double> create(String featureName) throws IOException {
+        try {
+            return featureData.computeIfAbsent(featureName, Unchecked.function(this::load));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private FastFeatureData<String, String, Double> load(String featureName) throws IOException {
         Path featureDataPath = properties.getFeatureFile(featureName);
-        FastFeatureIndex<String> feats = SimpleFastFeatureIndex.load(Files.lines(featureDataPath)
-                .map(line -> sp.parse(split(line, '\t')[1]))
+
+        FeatureSnapshot snapshot = null;
+        if (featureSnapshots) {
+            snapshot = new FeatureSnapshot(featureDataPath, Paths.get(properties.getProperty("itemsFile")));
+            if (snapshot.isValid()) {
+                LOG.log(Level.INFO, "loading snapshot {0}", snapshot.getSnapshotFile());
+                return snapshot.read(items);
+            }
+        }
+
+        List<Tuple3<String, String, Double>> rows;
+        try (Stream<String> lines = Files.lines(featureDataPath)) {
+            rows = lines
+                    .map(line -> {
+                        CharSequence[] tokens = split(line, '\t');
+                        double v = tokens.length > 2 ? Double.parseDouble(tokens[2].toString()) : 1.0;
+                        return tuple(sp.parse(tokens[0]), sp.parse(tokens[1]), v);
+                    })
+                    .collect(toList());
+        }
+
+        FastFeatureIndex<String> feats = SimpleFastFeatureIndex.load(rows.stream()
+                .map(t -> t.v2)
                 .distinct()
                 .sorted());
 
-        InputStream is = Files.newInputStream(featureDataPath);
+        if (snapshot != null) {
+            try {
+                snapshot.write(rows, items, feats);
+            } catch (IOException ex) {
+                LOG.log(Level.WARNING, "could not write snapshot " + snapshot.getSnapshotFile(), ex);
+            }
+        }
 
-        return SimpleFastFeatureData.load(SimpleFeaturesReader.get().read(is, sp, sp), items, feats);
+        return SimpleFastFeatureData.load(rows.stream(), items, feats);
     }
 
 }
@@ -9,10 +9,21 @@ package org.ranksys.mehta.factories;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.IntPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import org.jooq.lambda.Unchecked;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
 import org.ranksys.core.preference.fast.FastPreferenceData;
 import org.ranksys.evaluation.runner.fast.FastFilters;
 
@@ -20,17 +31,28 @@ import org.ranksys.evaluation.runner.fast.FastFilters;
  *
  * @author Saúl Vargas (Saul@VargasSandoval.es)
  */
+@Singleton
 public class FilterFactory {
 
+    private static final Logger LOG = Logger.getLogger(FilterFactory.class.getName());
+
     private final Provider<FastPreferenceData<String, String>> tpp;
     private final FeatureDataFactory fdf;
+    private final FastUserIndex<String> users;
+    private final FastItemIndex<String> items;
+    private final Map<String, CompiledFilter> compiled;
 
     @Inject
     public FilterFactory(
             @Named("trainPreferences") Provider<FastPreferenceData<String, String>> tpp,
-            FeatureDataFactory fdf) {
+            FeatureDataFactory fdf,
+            FastUserIndex<String> users,
+            FastItemIndex<String> items) {
         this.tpp = tpp;
         this.fdf = fdf;
+        this.users = users;
+        this.items = items;
+        this.compiled = new ConcurrentHashMap<>();
     }
 
     public Function<String, IntPredicate> create(String filterParams) throws IOException {
@@ -55,4 +77,73 @@ public class FilterFactory {
         return filter;
     }
 
+    /**
+     * Conjunction of a comma-separated list of filters, compiled when
+     * possible.
+     *
+     * @param filters filter expression
+     * @param compileFilters whether to try to compile the expression first
+     * @return filter
+     * @throws IOException when feature data cannot be read
+     */
+    public Function<String, IntPredicate> get(String filters, boolean compileFilters) throws IOException {
+        if (compileFilters) {
+            Function<String, IntPredicate> filter = compile(filters);
+            if (filter != null) {
+                return filter;
+            }
+        }
+
+        return Stream.of(filters.split(","))
+                .map(Unchecked.function(this::create))
+                .reduce(FastFilters::and)
+                .orElseGet(FastFilters::all);
+    }
+
+    /**
+     * Compiles a comma-separated conjunction of filters into bitmaps. Compiled
+     * filters are shared by expression for the whole run.
+     *
+     * @param filters filter expression
+     * @return compiled filter, or null if the expression contains filters that
+     * cannot be compiled
+     * @throws IOException when feature data cannot be read
+     */
+    public Function<String, IntPredicate> compile(String filters) throws IOException {
+        try {
+            return compiled.computeIfAbsent(filters, Unchecked.function(this::doCompile));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private CompiledFilter doCompile(String filters) throws IOException {
+        BitSet allowed = new BitSet(items.numItems());
+        allowed.set(0, items.numItems());
+        FastPreferenceData<String, String> excluded = null;
+
+        for (String filterParams : filters.split(",")) {
+            String[] params = filterParams.split("_");
+            switch (params[0]) {
+                case "all":
+                    break;
+                case "notInTrain":
+                    excluded = tpp.get();
+                    break;
+                case "withFeatures":
+                    BitSet withFeatures = new BitSet(items.numItems());
+                    fdf.create(params[1]).getIidxWithFeatures().forEach(withFeatures::set);
+                    allowed.and(withFeatures);
+                    break;
+                default:
+                    LOG.log(Level.WARNING, "filter {0} cannot be compiled", filterParams);
+                    return null;
+            }
+        }
+
+        LOG.log(Level.INFO, "compiled filters {0}: {1} allowed items", new Object[]{filters, allowed.cardinality()});
+
+        return new CompiledFilter(users, allowed, excluded);
+    }
+
 }
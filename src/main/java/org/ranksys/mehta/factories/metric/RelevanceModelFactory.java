@@ -12,6 +12,7 @@ import com.google.inject.Provider;
 import com.google.inject.name.Named;
 import org.ranksys.core.preference.fast.FastPreferenceData;
 import org.ranksys.mehta.config.MehtaParameters;
+import org.ranksys.mehta.factories.ComponentCache;
 import org.ranksys.mehta.factories.MehtaFactory;
 import org.ranksys.metrics.basic.NDCG;
 import org.ranksys.metrics.rel.BackgroundBinaryRelevanceModel;
@@ -30,16 +31,23 @@ import java.util.function.Supplier;
 public class RelevanceModelFactory implements MehtaFactory<RelevanceModel<String, String>> {
 
     private final Provider<FastPreferenceData<String, String>> tpp;
+    private final ComponentCache cache;
 
     @Inject
     public RelevanceModelFactory(
-            @Named("testPreferences") Provider<FastPreferenceData<String, String>> tpp) {
+            @Named("testPreferences") Provider<FastPreferenceData<String, String>> tpp,
+            ComponentCache cache) {
         this.tpp = tpp;
+        this.cache = cache;
     }
 
     @Override
     public Optional<RelevanceModel<String, String>> create(MehtaParameters params) {
-        
+        return cache.get("relevanceModel", params, this::createModel, rm -> 16L * tpp.get().numPreferences());
+    }
+
+    private Optional<RelevanceModel<String, String>> createModel(MehtaParameters params) {
+
         Supplier<Double> l = () -> params.getDouble("threshold", 1.0);
 
         Optional<RelevanceModel<String, String>> relModel;
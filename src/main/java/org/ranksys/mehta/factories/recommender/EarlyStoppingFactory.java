@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.factories.recommender;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.name.Named;
+import org.jooq.lambda.tuple.Tuple3;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.formats.preference.SimpleRatingPreferencesReader;
+import org.ranksys.mehta.config.MehtaParameters;
+import org.ranksys.mehta.factories.MehtaFactory;
+import org.ranksys.mehta.recommenders.validation.EarlyStopping;
+import org.ranksys.mehta.recommenders.validation.HeldOutPreferenceData;
+import org.ranksys.mehta.recommenders.validation.Validation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.ranksys.formats.parsing.Parsers.sp;
+
+/**
+ * Early stopping configuration of a model. It is enabled by either a
+ * {@code validation} fraction of the training preferences to hold out, or a
+ * {@code validationFile} with validation preferences. Either way, the
+ * validation preferences are held out of the training preferences, without
+ * copying them. Other parameters are
+ * {@code evalEvery}, {@code patience}, {@code validationUsers},
+ * {@code validationNegatives} and {@code validationSeed}.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class EarlyStoppingFactory implements MehtaFactory<EarlyStopping<String, String>> {
+
+    private final FastUserIndex<String> users;
+    private final FastItemIndex<String> items;
+    private final Provider<FastPreferenceData<String, String>> tpp;
+
+    @Inject
+    public EarlyStoppingFactory(
+            FastUserIndex<String> users, FastItemIndex<String> items,
+            @Named("trainPreferences") Provider<FastPreferenceData<String, String>> tpp) {
+        this.users = users;
+        this.items = items;
+        this.tpp = tpp;
+    }
+
+    @Override
+    public Optional<EarlyStopping<String, String>> create(MehtaParameters params) {
+        if (!params.contains("validation") && !params.contains("validationFile")) {
+            return Optional.empty();
+        }
+
+        long seed = params.getInt("validationSeed", 0);
+        FastPreferenceData<String, String> data = tpp.get();
+        int[][] known = IntStream.range(0, data.numUsers()).parallel()
+                .mapToObj(uidx -> data.getUidxPreferences(uidx).mapToInt(p -> p.v1).sorted().toArray())
+                .toArray(int[][]::new);
+
+        List<List<Integer>> positives = new ArrayList<>(data.numUsers());
+        for (int uidx = 0; uidx < data.numUsers(); uidx++) {
+            positives.add(new ArrayList<>());
+        }
+
+        if (params.contains("validationFile")) {
+            try (Stream<Tuple3<String, String, Double>> tuples = SimpleRatingPreferencesReader.get().read(params.get("validationFile", ""), sp, sp)) {
+                tuples.forEach(t -> {
+                    int uidx = users.user2uidx(t.v1);
+                    int iidx = items.item2iidx(t.v2);
+                    if (uidx >= 0 && iidx >= 0) {
+                        positives.get(uidx).add(iidx);
+                    }
+                });
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        } else {
+            double fraction = params.getDouble("validation", 0.1);
+            for (int uidx = 0; uidx < data.numUsers(); uidx++) {
+                List<Integer> userPositives = positives.get(uidx);
+                int u = uidx;
+                data.getUidxPreferences(uidx)
+                        .filter(pref -> held(seed, u, pref.v1) < fraction)
+                        .forEach(pref -> userPositives.add(pref.v1));
+            }
+        }
+
+        int[][] validationItems = positives.stream()
+                .map(list -> list.stream().mapToInt(Integer::intValue).sorted().distinct().toArray())
+                .toArray(int[][]::new);
+        FastPreferenceData<String, String> train = new HeldOutPreferenceData<>(data, validationItems);
+        Validation validation = new Validation(items.numItems(), validationItems, known,
+                params.getInt("validationUsers", 1000), params.getInt("validationNegatives", 10), seed);
+
+        return Optional.of(new EarlyStopping<>(train, validation, params.getInt("evalEvery", 1), params.getInt("patience", 3)));
+    }
+
+    private static double held(long seed, int uidx, int iidx) {
+        long z = seed * 0x9e3779b97f4a7c15L + ((long) uidx << 32 | iidx);
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        z = z ^ (z >>> 31);
+
+        return (z >>> 11) / (double) (1L << 53);
+    }
+}
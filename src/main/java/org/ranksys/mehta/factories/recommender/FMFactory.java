@@ -15,13 +15,18 @@ import org.ranksys.core.index.fast.FastUserIndex;
 import org.ranksys.core.preference.fast.FastPreferenceData;
 import org.ranksys.mehta.config.MehtaParameters;
 import org.ranksys.mehta.factories.MehtaFactory;
+import org.ranksys.mehta.recommenders.fm.HogwildBPRLearner;
+import org.ranksys.mehta.recommenders.fm.HogwildFMLearner;
+import org.ranksys.mehta.recommenders.fm.HogwildRMSELearner;
+import org.ranksys.mehta.stats.RunStatistics;
 import org.ranksys.recommenders.fm.PreferenceFM;
 import org.ranksys.recommenders.fm.learner.BPRLearner;
-import org.ranksys.recommenders.fm.learner.PreferenceFMLearner;
 import org.ranksys.recommenders.fm.learner.RMSELearner;
 
 import java.util.Optional;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  *
@@ -29,17 +34,22 @@ import java.util.function.Supplier;
  */
 public class FMFactory implements MehtaFactory<PreferenceFM<String, String>> {
 
+    private static final Logger LOG = Logger.getLogger(FMFactory.class.getName());
+
     private final FastUserIndex<String> users;
     private final FastItemIndex<String> items;
     private final Provider<FastPreferenceData<String, String>> tpp;
+    private final EarlyStoppingFactory esf;
 
     @Inject
     public FMFactory(
             FastUserIndex<String> users, FastItemIndex<String> items,
-            @Named("trainPreferences") Provider<FastPreferenceData<String, String>> tpp) {
+            @Named("trainPreferences") Provider<FastPreferenceData<String, String>> tpp,
+            EarlyStoppingFactory esf) {
         this.users = users;
         this.items = items;
         this.tpp = tpp;
+        this.esf = esf;
     }
 
     @Override
@@ -50,21 +60,44 @@ public class FMFactory implements MehtaFactory<PreferenceFM<String, String>> {
         Supplier<Double> regB = () -> params.getDouble("regB", 0.01);
         Supplier<Double> regW = () -> params.getDouble("regW", 0.01);
         Supplier<Double> regM = () -> params.getDouble("regM", 0.01);
+        Supplier<Double> negativeProp = () -> params.getDouble("negativeProp", 2.0);
+        Supplier<Integer> threads = () -> params.getInt("threads", Runtime.getRuntime().availableProcessors());
+        int k = params.getInt("k", 100);
+        double sdev = params.getDouble("sdev", 0.1);
 
-        Optional<PreferenceFMLearner<String, String>> learner;
+        Optional<Supplier<PreferenceFM<String, String>>> learner;
         switch (params.name()) {
             case "rmse":
-                double negativeProp = params.getDouble("negativeProp", 2.0);
-                learner = Optional.of(new RMSELearner<>(learnRate.get(), numIter.get(), regB.get(), regW.get(), regM.get(), negativeProp, users, items));
+                learner = Optional.of(() -> new RMSELearner<>(learnRate.get(), numIter.get(), regB.get(), regW.get(), regM.get(), negativeProp.get(), users, items)
+                        .learn(tpp.get(), k, sdev));
                 break;
             case "bpr":
-                learner = Optional.of(new BPRLearner<>(learnRate.get(), numIter.get(), regW.get(), regM.get(), users, items));
+                learner = Optional.of(() -> new BPRLearner<>(learnRate.get(), numIter.get(), regW.get(), regM.get(), users, items)
+                        .learn(tpp.get(), k, sdev));
+                break;
+            case "rmse-parallel":
+                learner = Optional.of(() -> learn(new HogwildRMSELearner<>(learnRate.get(), numIter.get(), regB.get(), regW.get(), regM.get(), negativeProp.get(), threads.get(), params.getInt("seed", 0), users, items),
+                        params, k, sdev));
+                break;
+            case "bpr-parallel":
+                learner = Optional.of(() -> learn(new HogwildBPRLearner<>(learnRate.get(), numIter.get(), regW.get(), regM.get(), threads.get(), params.getInt("seed", 0), users, items),
+                        params, k, sdev));
                 break;
             default:
                 learner = Optional.empty();
         }
 
-        return learner.map(l -> l.learn(tpp.get(), params.getInt("k", 100), params.getDouble("sdev", 0.1)));
+        if (learner.isPresent() && !params.name().endsWith("-parallel") && (params.contains("validation") || params.contains("validationFile"))) {
+            LOG.log(Level.WARNING, "early stopping is not supported by {0}, training for numIter epochs", params.name());
+        }
+
+        return learner.map(l -> RunStatistics.time("training", l::get));
+    }
+
+    private PreferenceFM<String, String> learn(HogwildFMLearner<String, String> learner, MehtaParameters params, int k, double sdev) {
+        return esf.create(params)
+                .map(es -> learner.learn(k, sdev, es))
+                .orElseGet(() -> learner.learn(tpp.get(), k, sdev));
     }
 
 }
@@ -7,20 +7,38 @@
  */
 package org.ranksys.mehta.factories.recommender;
 
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.name.Named;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
 import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.formats.factorization.SimpleFactorizationFormat;
 import org.ranksys.mehta.config.MehtaParameters;
+import org.ranksys.mehta.config.MehtaProperties;
 import org.ranksys.mehta.factories.MehtaFactory;
+import org.ranksys.mehta.recommenders.mf.ParallelHKVFactorizer;
+import org.ranksys.mehta.recommenders.mf.ParallelPZTFactorizer;
+import org.ranksys.mehta.recommenders.validation.EarlyStopping;
+import org.ranksys.mehta.recommenders.validation.Validation;
+import org.ranksys.mehta.stats.RunStatistics;
 import org.ranksys.recommenders.mf.Factorization;
 import org.ranksys.recommenders.mf.Factorizer;
 import org.ranksys.recommenders.mf.als.HKVFactorizer;
 import org.ranksys.recommenders.mf.als.PZTFactorizer;
 import org.ranksys.recommenders.mf.plsa.PLSAFactorizer;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Optional;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  *
@@ -28,12 +46,25 @@ import java.util.function.Supplier;
  */
 public class FactorizationFactory implements MehtaFactory<Factorization<String, String>> {
 
+    private static final Logger LOG = Logger.getLogger(FactorizationFactory.class.getName());
+
+    private final MehtaProperties properties;
+    private final FastUserIndex<String> users;
+    private final FastItemIndex<String> items;
     private final Provider<FastPreferenceData<String, String>> tpp;
+    private final EarlyStoppingFactory esf;
 
     @Inject
     public FactorizationFactory(
-            @Named("trainPreferences") Provider<FastPreferenceData<String, String>> tpp) {
+            MehtaProperties properties,
+            FastUserIndex<String> users, FastItemIndex<String> items,
+            @Named("trainPreferences") Provider<FastPreferenceData<String, String>> tpp,
+            EarlyStoppingFactory esf) {
+        this.properties = properties;
+        this.users = users;
+        this.items = items;
         this.tpp = tpp;
+        this.esf = esf;
     }
 
     @Override
@@ -41,26 +72,140 @@ public class FactorizationFactory implements MehtaFactory<Factorization<String,
 
         Supplier<Double> reg = () -> params.getDouble("reg", 1.0);
         Supplier<Double> alpha = () -> params.getDouble("alpha", 1.0);
+        Supplier<Integer> threads = () -> params.getInt("threads", Runtime.getRuntime().availableProcessors());
 
-        Optional<Factorizer<String, String>> factorizer;
+        int numIter;
+        Optional<IntFunction<Factorizer<String, String>>> factorizer;
         switch (params.name()) {
             case "hkv":
                 double a1 = alpha.get();
-                factorizer = Optional.of(new HKVFactorizer<>(reg.get(), x -> 1 + a1 * x, params.getInt("numIter", 20)));
+                numIter = params.getInt("numIter", 20);
+                factorizer = Optional.of(n -> new HKVFactorizer<>(reg.get(), x -> 1 + a1 * x, n));
                 break;
             case "pzt":
                 double a2 = alpha.get();
-                factorizer = Optional.of(new PZTFactorizer<>(reg.get(), x -> 1 + a2 * x, params.getInt("numIter", 20)));
+                numIter = params.getInt("numIter", 20);
+                factorizer = Optional.of(n -> new PZTFactorizer<>(reg.get(), x -> 1 + a2 * x, n));
+                break;
+            case "hkv-parallel":
+                double a3 = alpha.get();
+                numIter = params.getInt("numIter", 20);
+                factorizer = Optional.of(n -> new ParallelHKVFactorizer<>(reg.get(), x -> 1 + a3 * x, n, threads.get(), params.getInt("seed", 0)));
+                break;
+            case "pzt-parallel":
+                double a4 = alpha.get();
+                numIter = params.getInt("numIter", 20);
+                factorizer = Optional.of(n -> new ParallelPZTFactorizer<>(reg.get(), x -> 1 + a4 * x, n, threads.get(), params.getInt("seed", 0)));
                 break;
             case "plsa":
-                factorizer = Optional.of(new PLSAFactorizer<>(params.getInt("numIter", 100)));
+                numIter = params.getInt("numIter", 100);
+                factorizer = Optional.of(n -> new PLSAFactorizer<>(n));
                 break;
             default:
+                numIter = 0;
                 factorizer = Optional.empty();
                 break;
         }
 
-        return factorizer.map(f -> f.factorize(params.getInt("k", 50), tpp.get()));
+        int k = params.getInt("k", 50);
+        Optional<EarlyStopping<String, String>> earlyStopping = factorizer.isPresent() ? esf.create(params) : Optional.empty();
+        Optional<Factorization<String, String>> initial = factorizer.isPresent() ? getWarmStart(params, k) : Optional.empty();
+
+        return factorizer.map(f -> RunStatistics.time("training", () -> earlyStopping
+                .map(es -> factorize(f, k, numIter, es, initial))
+                .orElseGet(() -> initial
+                        .map(mf -> {
+                            f.apply(numIter).factorize(mf, tpp.get());
+                            return mf;
+                        })
+                        .orElseGet(() -> f.apply(numIter).factorize(k, tpp.get())))));
+    }
+
+    /**
+     * Last factorization trained with the same parameters, to start training
+     * from when {@code warmStart=true}. It is saved by the recommender
+     * factory and only matches while the user and item indices do not change.
+     * With early stopping, the model was trained without the same held-out
+     * preferences: the random split is a function of the validation
+     * parameters, and models are not continued across changes of a
+     * validation file (see {@link MehtaProperties#getLatestModelFile}).
+     */
+    private Optional<Factorization<String, String>> getWarmStart(MehtaParameters params, int k) {
+        if (!params.contains("warmStart") || !params.getBoolean("warmStart", false)) {
+            return Optional.empty();
+        }
+
+        Path modelFile;
+        try {
+            modelFile = properties.getLatestModelFile("mf", params.without("warmStart", "numIter"));
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "could not check the validation file, training from scratch", ex);
+            return Optional.empty();
+        }
+        if (!Files.exists(modelFile)) {
+            LOG.log(Level.INFO, "no model to warm start from, training from scratch");
+            return Optional.empty();
+        }
+
+        try (InputStream in = Files.newInputStream(modelFile)) {
+            Factorization<String, String> factorization = SimpleFactorizationFormat.get().load(in, users, items);
+            if (factorization.getK() != k
+                    || factorization.getUserMatrix().rows() != users.numUsers()
+                    || factorization.getItemMatrix().rows() != items.numItems()) {
+                LOG.log(Level.WARNING, "model {0} does not match the current indices, training from scratch", modelFile);
+                return Optional.empty();
+            }
+            LOG.log(Level.INFO, "warm starting from {0}", modelFile);
+            return Optional.of(factorization);
+        } catch (IOException | RuntimeException ex) {
+            LOG.log(Level.WARNING, "could not load " + modelFile + ", training from scratch", ex);
+            return Optional.empty();
+        }
+    }
+
+    private Factorization<String, String> factorize(IntFunction<Factorizer<String, String>> factorizer, int k, int maxIter,
+            EarlyStopping<String, String> earlyStopping, Optional<Factorization<String, String>> initial) {
+        FastPreferenceData<String, String> train = earlyStopping.getTrain();
+        LOG.log(Level.INFO, "training with early stopping, up to {0} iterations", maxIter);
+
+        return earlyStopping.train(maxIter, new EarlyStopping.Trainer<Factorization<String, String>>() {
+
+            private Factorization<String, String> factorization = initial.orElse(null);
+
+            @Override
+            public void step(int numIter) {
+                if (factorization == null) {
+                    factorization = factorizer.apply(numIter).factorize(k, train);
+                } else {
+                    factorizer.apply(numIter).factorize(factorization, train);
+                }
+            }
+
+            @Override
+            public Validation.Scorer scorer() {
+                DoubleMatrix2D p = factorization.getUserMatrix();
+                DoubleMatrix2D q = factorization.getItemMatrix();
+                return (uidx, iidx) -> {
+                    double s = 0.0;
+                    for (int f = 0; f < k; f++) {
+                        s += p.getQuick(uidx, f) * q.getQuick(iidx, f);
+                    }
+                    return s;
+                };
+            }
+
+            @Override
+            public double error() {
+                return factorizer.apply(0).error(factorization, train);
+            }
+
+            @Override
+            public Factorization<String, String> snapshot() {
+                return new Factorization<>(train, train,
+                        (DenseDoubleMatrix2D) factorization.getUserMatrix().copy(),
+                        (DenseDoubleMatrix2D) factorization.getItemMatrix().copy(), k);
+            }
+        });
     }
 
 }
@@ -8,15 +8,27 @@
 package org.ranksys.mehta.factories.recommender;
 
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import org.ranksys.core.index.fast.FastItemIndex;
 import org.ranksys.mehta.config.MehtaParameters;
+import org.ranksys.mehta.config.MehtaProperties;
+import org.ranksys.mehta.factories.ComponentCache;
 import org.ranksys.mehta.factories.MehtaFactory;
+import org.ranksys.mehta.formats.neighborhood.CsrNeighborhood;
+import org.ranksys.mehta.stats.RunStatistics;
 import org.ranksys.novdiv.inverted.neighborhood.InvertedItemNeighborhood;
 import org.ranksys.recommenders.nn.item.neighborhood.ItemNeighborhood;
 import org.ranksys.recommenders.nn.item.neighborhood.ItemNeighborhoods;
 import org.ranksys.recommenders.nn.item.sim.ItemSimilarity;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 /**
  *
@@ -24,15 +36,65 @@ import java.util.function.Supplier;
  */
 public class ItemNeighborhoodFactory implements MehtaFactory<ItemNeighborhood<String>> {
 
+    private static final Logger LOG = Logger.getLogger(ItemNeighborhoodFactory.class.getName());
+
+    private final FastItemIndex<String> items;
     private final ItemSimilarityFactory isf;
+    private final ComponentCache cache;
+    private final MehtaProperties properties;
+    private final boolean persistNeighborhoods;
 
     @Inject
-    public ItemNeighborhoodFactory(ItemSimilarityFactory isf) {
+    public ItemNeighborhoodFactory(
+            FastItemIndex<String> items,
+            ItemSimilarityFactory isf,
+            ComponentCache cache,
+            MehtaProperties properties,
+            @Named("persistNeighborhoods") boolean persistNeighborhoods) {
+        this.items = items;
         this.isf = isf;
+        this.cache = cache;
+        this.properties = properties;
+        this.persistNeighborhoods = persistNeighborhoods;
     }
 
     @Override
     public Optional<ItemNeighborhood<String>> create(MehtaParameters params) {
+        return cache.get("itemNeighborhood", params, p -> RunStatistics.time("neighborhood", () -> createNeighborhood(p)), in -> weight(in, isCached(params)));
+    }
+
+    private Optional<ItemNeighborhood<String>> createNeighborhood(MehtaParameters params) {
+        if (isPersisted(params)) {
+            try {
+                return createPersistedNeighborhood(params);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        return createComputedNeighborhood(params);
+    }
+
+    private Optional<ItemNeighborhood<String>> createPersistedNeighborhood(MehtaParameters params) throws IOException {
+        Path file = properties.getModelFile("itemNeighborhood", params);
+
+        if (!CsrNeighborhood.isValid(file)) {
+            Optional<ItemNeighborhood<String>> in = createComputedNeighborhood(params);
+            if (!in.isPresent()) {
+                return in;
+            }
+            LOG.log(Level.INFO, "writing neighborhood {0}", file);
+            CsrNeighborhood.write(file, in.get(), in.get().numItems());
+        }
+
+        LOG.log(Level.INFO, "mapping neighborhood {0}", file);
+        CsrNeighborhood neighborhood = RunStatistics.time("modelLoad", () -> CsrNeighborhood.map(file));
+
+        return Optional.of(new ItemNeighborhood<String>(items, neighborhood) {
+        });
+    }
+
+    private Optional<ItemNeighborhood<String>> createComputedNeighborhood(MehtaParameters params) {
 
         Supplier<Optional<ItemSimilarity<String>>> iss = () -> params.subset("sim").flatMap(isf::create);
 
@@ -53,9 +115,26 @@ public class ItemNeighborhoodFactory implements MehtaFactory<ItemNeighborhood<St
                 itemNeighborhood = Optional.empty();
         }
 
-        boolean cached = params.getBoolean("cached", false) && !params.name().equals("inverted");
+        boolean cached = isCached(params);
 
         return itemNeighborhood.map(in -> cached ? ItemNeighborhoods.cached(in) : in);
     }
 
+    private boolean isCached(MehtaParameters params) {
+        return params.getBoolean("cached", false) && !params.name().equals("inverted") && !isPersisted(params);
+    }
+
+    private boolean isPersisted(MehtaParameters params) {
+        return persistNeighborhoods && (params.name().equals("knn") || params.name().equals("threshold"));
+    }
+
+    private static long weight(ItemNeighborhood<String> in, boolean cached) {
+        if (!cached) {
+            return 0L;
+        }
+        return (Integer.BYTES + Double.BYTES) * IntStream.range(0, in.numItems())
+                .mapToLong(iidx -> in.getNeighbors(iidx).count())
+                .sum();
+    }
+
 }
@@ -10,36 +10,86 @@ package org.ranksys.mehta.factories.recommender;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.name.Named;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
 import org.ranksys.core.preference.fast.FastPreferenceData;
 import org.ranksys.mehta.config.MehtaParameters;
+import org.ranksys.mehta.config.MehtaProperties;
+import org.ranksys.mehta.factories.ComponentCache;
 import org.ranksys.mehta.factories.MehtaFactory;
+import org.ranksys.mehta.formats.preference.PreferenceDeltas;
+import org.ranksys.mehta.formats.preference.PreferenceSnapshot;
+import org.ranksys.mehta.recommenders.nn.CooccurrenceCounts;
+import org.ranksys.mehta.stats.RunStatistics;
 import org.ranksys.recommenders.nn.item.sim.ItemSimilarities;
 import org.ranksys.recommenders.nn.item.sim.ItemSimilarity;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * @author Saúl Vargas (Saul@VargasSandoval.es)
  */
 public class ItemSimilarityFactory implements MehtaFactory<ItemSimilarity<String>> {
 
+    private static final Logger LOG = Logger.getLogger(ItemSimilarityFactory.class.getName());
+
+    private final MehtaProperties properties;
+    private final FastUserIndex<String> users;
+    private final FastItemIndex<String> items;
     private final Provider<FastPreferenceData<String, String>> tpp;
+    private final PreferenceDeltas deltas;
+    private final ComponentCache cache;
 
     @Inject
     public ItemSimilarityFactory(
-            @Named("trainPreferences") Provider<FastPreferenceData<String, String>> tpp) {
+            MehtaProperties properties,
+            FastUserIndex<String> users, FastItemIndex<String> items,
+            @Named("trainPreferences") Provider<FastPreferenceData<String, String>> tpp,
+            PreferenceDeltas deltas,
+            ComponentCache cache) {
+        this.properties = properties;
+        this.users = users;
+        this.items = items;
         this.tpp = tpp;
+        this.deltas = deltas;
+        this.cache = cache;
     }
 
     @Override
     public Optional<ItemSimilarity<String>> create(MehtaParameters params) {
+        return cache.get("itemSimilarity", params, p -> RunStatistics.time("similarity", () -> createSimilarity(p)), ItemSimilarityFactory::weight);
+    }
+
+    /**
+     * Heap retained by a similarity. The similarities of RankSys are
+     * computed on demand from the training data, which is shared, and only
+     * keep a norm per item; the incremental one keeps all the co-occurrence
+     * counts.
+     */
+    private static long weight(ItemSimilarity<String> similarity) {
+        if (similarity instanceof CooccurrenceItemSimilarity) {
+            return ((CooccurrenceItemSimilarity) similarity).counts.sizeInBytes();
+        }
+        return (long) Double.BYTES * similarity.numItems();
+    }
+
+    private Optional<ItemSimilarity<String>> createSimilarity(MehtaParameters params) {
 
         Supplier<Boolean> dense = () -> params.getBoolean("dense", true);
 
         switch (params.name()) {
             case "cosine":
             case "set-cosine":
+                if (params.contains("incremental") && params.getBoolean("incremental", false)) {
+                    return Optional.of(new CooccurrenceItemSimilarity(items, getCooccurrences(), params.getDouble("alpha", 0.5)));
+                }
                 return Optional.of(ItemSimilarities.setCosine(tpp.get(), params.getDouble("alpha", 0.5), dense.get()));
             case "vec-cosine":
                 return Optional.of(ItemSimilarities.vectorCosine(tpp.get(), dense.get()));
@@ -53,4 +103,65 @@ public class ItemSimilarityFactory implements MehtaFactory<ItemSimilarity<String
         }
     }
 
+    private CooccurrenceCounts getCooccurrences() {
+        try {
+            String fingerprint = deltas.getFingerprint(deltas.size());
+            Path countsFile = properties.getModelFile("cooccurrences", fingerprint);
+
+            for (int n = deltas.size(); n >= 0; n--) {
+                String previousFingerprint = deltas.getFingerprint(n);
+                Path previousFile = properties.getModelFile("cooccurrences", previousFingerprint);
+                if (!Files.exists(previousFile)) {
+                    continue;
+                }
+                if (n == deltas.size()) {
+                    CooccurrenceCounts counts = CooccurrenceCounts.read(previousFile, previousFingerprint, items.numItems());
+                    if (counts != null) {
+                        LOG.log(Level.INFO, "loading co-occurrences {0}", previousFile);
+                        return counts;
+                    }
+                    continue;
+                }
+
+                PreferenceSnapshot snapshot = deltas.getSnapshot(n);
+                if (!snapshot.isValid()) {
+                    continue;
+                }
+                CooccurrenceCounts counts = CooccurrenceCounts.read(previousFile, previousFingerprint, items.numItems());
+                if (counts == null) {
+                    continue;
+                }
+
+                LOG.log(Level.INFO, "updating co-occurrences {0} with {1} deltas", new Object[]{previousFile, deltas.size() - n});
+                FastPreferenceData<String, String> before = snapshot.read(users, items);
+                counts.update(before, deltas.getNewPairs(before, n, users, items));
+                write(counts, countsFile, fingerprint);
+                return counts;
+            }
+
+            CooccurrenceCounts counts = CooccurrenceCounts.build(tpp.get());
+            write(counts, countsFile, fingerprint);
+            return counts;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void write(CooccurrenceCounts counts, Path countsFile, String fingerprint) {
+        try {
+            counts.write(countsFile, fingerprint);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "could not write co-occurrences " + countsFile, ex);
+        }
+    }
+
+    private static class CooccurrenceItemSimilarity extends ItemSimilarity<String> {
+
+        private final CooccurrenceCounts counts;
+
+        public CooccurrenceItemSimilarity(FastItemIndex<String> items, CooccurrenceCounts counts, double alpha) {
+            super(items, counts.similarity(alpha));
+            this.counts = counts;
+        }
+    }
 }
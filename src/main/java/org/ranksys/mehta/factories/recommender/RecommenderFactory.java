@@ -19,6 +19,9 @@ import org.ranksys.formats.factorization.SimpleFactorizationFormat;
 import org.ranksys.mehta.config.MehtaParameters;
 import org.ranksys.mehta.config.MehtaProperties;
 import org.ranksys.mehta.factories.MehtaFactory;
+import org.ranksys.mehta.recommenders.mf.BatchMFRecommender;
+import org.ranksys.mehta.runner.OutputFiles;
+import org.ranksys.mehta.stats.RunStatistics;
 import org.ranksys.recommenders.basic.PopularityRecommender;
 import org.ranksys.recommenders.basic.RandomRecommender;
 import org.ranksys.recommenders.fast.FastRecommender;
@@ -29,9 +32,16 @@ import org.ranksys.recommenders.mf.rec.MFRecommender;
 import org.ranksys.recommenders.nn.item.ItemNeighborhoodRecommender;
 import org.ranksys.recommenders.nn.user.UserNeighborhoodRecommender;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -49,6 +59,8 @@ public class RecommenderFactory implements MehtaFactory<FastRecommender<String,
     private final ItemNeighborhoodFactory inf;
     private final FactorizationFactory ff;
     private final FMFactory fmf;
+    private final boolean reuseModels;
+    private final boolean batchScoring;
 
     @Inject
     public RecommenderFactory(
@@ -57,7 +69,9 @@ public class RecommenderFactory implements MehtaFactory<FastRecommender<String,
             @Named("targetUsers") Set<String> targetUsers,
             @Named("trainPreferences") Provider<FastPreferenceData<String, String>> tpp,
             UserNeighborhoodFactory unf, ItemNeighborhoodFactory inf,
-            FactorizationFactory ff, FMFactory fmf) {
+            FactorizationFactory ff, FMFactory fmf,
+            @Named("reuseModels") boolean reuseModels,
+            @Named("batchScoring") boolean batchScoring) {
         this.properties = properties;
         this.users = users;
         this.items = items;
@@ -66,6 +80,8 @@ public class RecommenderFactory implements MehtaFactory<FastRecommender<String,
         this.inf = inf;
         this.ff = ff;
         this.fmf = fmf;
+        this.reuseModels = reuseModels;
+        this.batchScoring = batchScoring;
     }
 
     @Override
@@ -82,16 +98,49 @@ public class RecommenderFactory implements MehtaFactory<FastRecommender<String,
                 return params.subset("neighborhood").flatMap(inf::create)
                         .map(in -> new ItemNeighborhoodRecommender<>(tpp.get(), in, params.getInt("q", 1)));
             case "mf":
-                Optional<Factorization<String, String>> mfo = params.subset("mf").flatMap(ff::create);
-                mfo.ifPresent(Unchecked.consumer(mf -> SimpleFactorizationFormat.get().save(mf, Files.newOutputStream(properties.getModelFile(params.name())))));
-                return mfo.map(mf -> new MFRecommender<>(users, items, mf));
+                Optional<Factorization<String, String>> mfo = params.subset("mf")
+                        .flatMap(Unchecked.function(mfParams -> getModel(params.name(), "mf", mfParams, ff,
+                                Unchecked.function(in -> SimpleFactorizationFormat.get().load(in, users, items)),
+                                Unchecked.biConsumer((mf, out) -> SimpleFactorizationFormat.get().save(mf, out)))));
+                return mfo.map(mf -> batchScoring ? new BatchMFRecommender<>(users, items, mf) : new MFRecommender<>(users, items, mf));
             case "fm":
-                Optional<PreferenceFM<String, String>> fmo = params.subset("fm").flatMap(fmf::create);
-                fmo.ifPresent(Unchecked.consumer(fm -> SimpleFMFormat.get().save(fm, Files.newOutputStream(properties.getModelFile(params.name())))));
+                Optional<PreferenceFM<String, String>> fmo = params.subset("fm")
+                        .flatMap(Unchecked.function(fmParams -> getModel(params.name(), "fm", fmParams, fmf,
+                                Unchecked.function(in -> SimpleFMFormat.get().load(in, users, items)),
+                                Unchecked.biConsumer((fm, out) -> SimpleFMFormat.get().save(fm, out)))));
                 return fmo.map(FMRecommender::new);
             default:
                 return Optional.empty();
         }
     }
 
+    private <T> Optional<T> getModel(String recName, String kind, MehtaParameters modelParams, MehtaFactory<T> factory,
+            Function<InputStream, T> loader, BiConsumer<T, OutputStream> saver) throws IOException {
+        Path modelFile = reuseModels ? properties.getModelFile(kind, modelParams) : properties.getModelFile(recName);
+
+        if (reuseModels && Files.exists(modelFile)) {
+            LOG.log(Level.INFO, "{0} loading model {1}", new Object[]{recName, modelFile});
+            return RunStatistics.time("modelLoad", () -> {
+                try (InputStream in = Files.newInputStream(modelFile)) {
+                    return Optional.of(loader.apply(in));
+                }
+            });
+        }
+
+        Optional<T> model = factory.create(modelParams);
+        if (model.isPresent()) {
+            RunStatistics.time("modelSave", () -> {
+                OutputFiles.write(modelFile, out -> saver.accept(model.get(), out));
+
+                if (modelParams.contains("warmStart") && modelParams.getBoolean("warmStart", false)) {
+                    Path latestFile = properties.getLatestModelFile(kind, modelParams.without("warmStart", "numIter"));
+                    OutputFiles.write(latestFile, out -> Files.copy(modelFile, out));
+                }
+                return modelFile;
+            });
+        }
+
+        return model;
+    }
+
 }
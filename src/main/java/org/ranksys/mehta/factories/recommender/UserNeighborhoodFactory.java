@@ -8,16 +8,30 @@
 package org.ranksys.mehta.factories.recommender;
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.name.Named;
 import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.preference.fast.FastPreferenceData;
 import org.ranksys.mehta.config.MehtaParameters;
+import org.ranksys.mehta.config.MehtaProperties;
+import org.ranksys.mehta.factories.ComponentCache;
 import org.ranksys.mehta.factories.MehtaFactory;
+import org.ranksys.mehta.formats.neighborhood.CsrNeighborhood;
+import org.ranksys.mehta.recommenders.nn.MinHashNeighborhood;
+import org.ranksys.mehta.stats.RunStatistics;
 import org.ranksys.novdiv.inverted.neighborhood.InvertedUserNeighborhood;
 import org.ranksys.recommenders.nn.user.neighborhood.UserNeighborhood;
 import org.ranksys.recommenders.nn.user.neighborhood.UserNeighborhoods;
 import org.ranksys.recommenders.nn.user.sim.UserSimilarity;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 /**
  *
@@ -25,17 +39,68 @@ import java.util.function.Supplier;
  */
 public class UserNeighborhoodFactory implements MehtaFactory<UserNeighborhood<String>> {
 
+    private static final Logger LOG = Logger.getLogger(UserNeighborhoodFactory.class.getName());
+
     private final FastUserIndex<String> users;
+    private final Provider<FastPreferenceData<String, String>> tpp;
     private final UserSimilarityFactory usf;
+    private final ComponentCache cache;
+    private final MehtaProperties properties;
+    private final boolean persistNeighborhoods;
 
     @Inject
-    public UserNeighborhoodFactory(FastUserIndex<String> users, UserSimilarityFactory usf) {
+    public UserNeighborhoodFactory(
+            FastUserIndex<String> users,
+            @Named("trainPreferences") Provider<FastPreferenceData<String, String>> tpp,
+            UserSimilarityFactory usf,
+            ComponentCache cache,
+            MehtaProperties properties,
+            @Named("persistNeighborhoods") boolean persistNeighborhoods) {
         this.users = users;
+        this.tpp = tpp;
         this.usf = usf;
+        this.cache = cache;
+        this.properties = properties;
+        this.persistNeighborhoods = persistNeighborhoods;
     }
 
     @Override
     public Optional<UserNeighborhood<String>> create(MehtaParameters params) {
+        return cache.get("userNeighborhood", params, p -> RunStatistics.time("neighborhood", () -> createNeighborhood(p)), un -> weight(un, isCached(params)));
+    }
+
+    private Optional<UserNeighborhood<String>> createNeighborhood(MehtaParameters params) {
+        if (isPersisted(params)) {
+            try {
+                return createPersistedNeighborhood(params);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        return createComputedNeighborhood(params);
+    }
+
+    private Optional<UserNeighborhood<String>> createPersistedNeighborhood(MehtaParameters params) throws IOException {
+        Path file = properties.getModelFile("userNeighborhood", params);
+
+        if (!CsrNeighborhood.isValid(file)) {
+            Optional<UserNeighborhood<String>> un = createComputedNeighborhood(params);
+            if (!un.isPresent()) {
+                return un;
+            }
+            LOG.log(Level.INFO, "writing neighborhood {0}", file);
+            CsrNeighborhood.write(file, un.get(), un.get().numUsers());
+        }
+
+        LOG.log(Level.INFO, "mapping neighborhood {0}", file);
+        CsrNeighborhood neighborhood = RunStatistics.time("modelLoad", () -> CsrNeighborhood.map(file));
+
+        return Optional.of(new UserNeighborhood<String>(users, neighborhood) {
+        });
+    }
+
+    private Optional<UserNeighborhood<String>> createComputedNeighborhood(MehtaParameters params) {
 
         Supplier<Optional<UserSimilarity<String>>> uss = () -> params.subset("sim").flatMap(usf::create);
 
@@ -52,13 +117,46 @@ public class UserNeighborhoodFactory implements MehtaFactory<UserNeighborhood<St
                         .map(us -> UserNeighborhoods.topK(us, params.getInt("k", 100)))
                         .map(un -> new InvertedUserNeighborhood<>(un, users::containsUser));
                 break;
+            case "ann":
+                // an unknown similarity gives no neighborhood, as for knn
+                userNeighborhood = params.contains("sim")
+                        ? uss.get().map(us -> createANNNeighborhood(params, us))
+                        : Optional.of(createANNNeighborhood(params, null));
+                break;
             default:
                 userNeighborhood = Optional.empty();
         }
 
-        boolean cached = params.getBoolean("cached", false) && !params.name().equals("inverted");
+        boolean cached = isCached(params);
 
         return userNeighborhood.map(un -> cached ? UserNeighborhoods.cached(un) : un);
     }
 
+    private UserNeighborhood<String> createANNNeighborhood(MehtaParameters params, UserSimilarity<String> us) {
+        return new UserNeighborhood<String>(users, new MinHashNeighborhood(users.numUsers(),
+                uidx -> tpp.get().getUidxPreferences(uidx).mapToInt(p -> p.v1),
+                us,
+                params.getInt("bands", 20), params.getInt("rows", 2),
+                params.getInt("k", 100), params.getInt("maxCandidates", 1000),
+                params.getInt("seed", 0))) {
+        };
+    }
+
+    private boolean isCached(MehtaParameters params) {
+        return params.getBoolean("cached", false) && !params.name().equals("inverted") && !isPersisted(params);
+    }
+
+    private boolean isPersisted(MehtaParameters params) {
+        return persistNeighborhoods && (params.name().equals("knn") || params.name().equals("threshold") || params.name().equals("ann"));
+    }
+
+    private static long weight(UserNeighborhood<String> un, boolean cached) {
+        if (!cached) {
+            return 0L;
+        }
+        return (Integer.BYTES + Double.BYTES) * IntStream.range(0, un.numUsers())
+                .mapToLong(uidx -> un.getNeighbors(uidx).count())
+                .sum();
+    }
+
 }
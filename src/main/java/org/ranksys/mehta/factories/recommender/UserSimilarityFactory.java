@@ -12,7 +12,9 @@ import com.google.inject.Provider;
 import com.google.inject.name.Named;
 import org.ranksys.core.preference.fast.FastPreferenceData;
 import org.ranksys.mehta.config.MehtaParameters;
+import org.ranksys.mehta.factories.ComponentCache;
 import org.ranksys.mehta.factories.MehtaFactory;
+import org.ranksys.mehta.stats.RunStatistics;
 import org.ranksys.recommenders.nn.user.sim.UserSimilarities;
 import org.ranksys.recommenders.nn.user.sim.UserSimilarity;
 
@@ -26,15 +28,22 @@ import java.util.function.Supplier;
 public class UserSimilarityFactory implements MehtaFactory<UserSimilarity<String>> {
 
     private final Provider<FastPreferenceData<String, String>> tpp;
+    private final ComponentCache cache;
 
     @Inject
     public UserSimilarityFactory(
-            @Named("trainPreferences") Provider<FastPreferenceData<String, String>> tpp) {
+            @Named("trainPreferences") Provider<FastPreferenceData<String, String>> tpp,
+            ComponentCache cache) {
         this.tpp = tpp;
+        this.cache = cache;
     }
 
     @Override
     public Optional<UserSimilarity<String>> create(MehtaParameters params) {
+        return cache.get("userSimilarity", params, p -> RunStatistics.time("similarity", () -> createSimilarity(p)), s -> (long) Double.BYTES * s.numUsers());
+    }
+
+    private Optional<UserSimilarity<String>> createSimilarity(MehtaParameters params) {
 
         Supplier<Boolean> dense = () -> params.getBoolean("dense", true);
 
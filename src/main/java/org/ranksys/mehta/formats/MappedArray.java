@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+/**
+ * Read-only array of fixed-width records in a region of a file, mapped in
+ * segments of 2^27 records so that it is not limited by the 2 GB size of a
+ * single mapping. Records are big-endian, as written by a
+ * {@link java.io.DataOutputStream}.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class MappedArray {
+
+    private static final int SEGMENT_BITS = 27;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private final ByteBuffer[] segments;
+    private final long length;
+    private final int width;
+
+    private MappedArray(ByteBuffer[] segments, long length, int width) {
+        this.segments = segments;
+        this.length = length;
+        this.width = width;
+    }
+
+    /**
+     * Maps an array of records.
+     *
+     * @param channel file channel, which may be closed once mapped
+     * @param position position of the first record in the file
+     * @param length number of records
+     * @param width bytes per record, at most 15
+     * @return mapped array
+     * @throws IOException when the region cannot be mapped
+     */
+    public static MappedArray map(FileChannel channel, long position, long length, int width) throws IOException {
+        if (width <= 0 || width > 15) {
+            throw new IllegalArgumentException("unsupported record width " + width);
+        }
+        if (length < 0 || position + length * width > channel.size()) {
+            throw new IOException("region out of the bounds of the file");
+        }
+        int numSegments = (int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS);
+        ByteBuffer[] segments = new ByteBuffer[Math.max(1, numSegments)];
+        for (int s = 0; s < segments.length; s++) {
+            long first = (long) s << SEGMENT_BITS;
+            long count = Math.max(0L, Math.min(length - first, 1L << SEGMENT_BITS));
+            segments[s] = channel.map(READ_ONLY, position + first * width, count * width)
+                    .order(ByteOrder.BIG_ENDIAN);
+        }
+
+        return new MappedArray(segments, length, width);
+    }
+
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Number of bytes of the array in the file.
+     *
+     * @return length times width
+     */
+    public long byteSize() {
+        return length * width;
+    }
+
+    public int getInt(long i) {
+        return getInt(i, 0);
+    }
+
+    public int getInt(long i, int offset) {
+        return segment(i).getInt(position(i) + offset);
+    }
+
+    public long getLong(long i) {
+        return segment(i).getLong(position(i));
+    }
+
+    public float getFloat(long i) {
+        return getFloat(i, 0);
+    }
+
+    public float getFloat(long i, int offset) {
+        return segment(i).getFloat(position(i) + offset);
+    }
+
+    public double getDouble(long i) {
+        return getDouble(i, 0);
+    }
+
+    public double getDouble(long i, int offset) {
+        return segment(i).getDouble(position(i) + offset);
+    }
+
+    private ByteBuffer segment(long i) {
+        return segments[(int) (i >>> SEGMENT_BITS)];
+    }
+
+    private int position(long i) {
+        return (int) (i & SEGMENT_MASK) * width;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.feature;
+
+import org.jooq.lambda.tuple.Tuple3;
+import org.ranksys.core.feature.fast.FastFeatureData;
+import org.ranksys.core.feature.fast.SimpleFastFeatureData;
+import org.ranksys.core.index.fast.FastFeatureIndex;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.SimpleFastFeatureIndex;
+import org.ranksys.mehta.config.MehtaProperties;
+import org.ranksys.mehta.runner.OutputFiles;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+/**
+ * Binary snapshot of an item-feature file stored next to it. The snapshot
+ * keeps the sorted feature dictionary and the item-feature pairs by item and
+ * feature index, and is only considered valid while the feature and items
+ * files keep the size and modification time they had when it was written.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class FeatureSnapshot {
+
+    private static final int MAGIC = 0x4d454846;
+    private static final int VERSION = 2;
+    private static final int MAX_FINGERPRINT_BYTES = 1 << 16;
+    private static final int BUFFER_SIZE = 1 << 23;
+
+    private final Path snapshotFile;
+    private final String fingerprint;
+
+    public FeatureSnapshot(Path featuresFile, Path itemsFile) throws IOException {
+        this.snapshotFile = featuresFile.resolveSibling(featuresFile.getFileName() + ".snapshot");
+        this.fingerprint = MehtaProperties.fingerprint(featuresFile, itemsFile);
+    }
+
+    public Path getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public boolean isValid() throws IOException {
+        if (!OutputFiles.isComplete(snapshotFile, MAGIC)) {
+            return false;
+        }
+        try (DataInputStream in = open()) {
+            return readHeader(in);
+        } catch (EOFException ex) {
+            return false;
+        }
+    }
+
+    public <I> FastFeatureData<I, String, Double> read(FastItemIndex<I> items) throws IOException {
+        try (DataInputStream in = open()) {
+            if (!readHeader(in)) {
+                throw new IOException("stale snapshot " + snapshotFile);
+            }
+
+            int numFeatures = in.readInt();
+            List<String> features = new ArrayList<>(numFeatures);
+            for (int fidx = 0; fidx < numFeatures; fidx++) {
+                features.add(in.readUTF());
+            }
+            FastFeatureIndex<String> feats = SimpleFastFeatureIndex.load(features.stream());
+
+            int numRows = in.readInt();
+            List<Tuple3<I, String, Double>> rows = new ArrayList<>(numRows);
+            for (int i = 0; i < numRows; i++) {
+                int iidx = in.readInt();
+                int fidx = in.readInt();
+                double v = in.readDouble();
+                rows.add(tuple(items.iidx2item(iidx), features.get(fidx), v));
+            }
+
+            return SimpleFastFeatureData.load(rows.stream(), items, feats);
+        }
+    }
+
+    public <I> void write(List<Tuple3<I, String, Double>> rows, FastItemIndex<I> items, FastFeatureIndex<String> feats) throws IOException {
+        OutputFiles.write(snapshotFile, MAGIC, stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            byte[] fp = fingerprint.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(fp.length);
+            out.write(fp);
+
+            out.writeInt(feats.numFeatures());
+            for (int fidx = 0; fidx < feats.numFeatures(); fidx++) {
+                out.writeUTF(feats.fidx2feature(fidx));
+            }
+
+            int numRows = (int) rows.stream()
+                    .filter(t -> items.item2iidx(t.v1) >= 0)
+                    .count();
+            out.writeInt(numRows);
+            for (Tuple3<I, String, Double> t : rows) {
+                int iidx = items.item2iidx(t.v1);
+                if (iidx >= 0) {
+                    out.writeInt(iidx);
+                    out.writeInt(feats.feature2fidx(t.v2));
+                    out.writeDouble(t.v3);
+                }
+            }
+            out.flush();
+        });
+    }
+
+    private DataInputStream open() throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile), BUFFER_SIZE));
+    }
+
+    private boolean readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return false;
+        }
+        int fpLength = in.readInt();
+        if (fpLength < 0 || fpLength > MAX_FINGERPRINT_BYTES) {
+            return false;
+        }
+        byte[] fp = new byte[fpLength];
+        in.readFully(fp);
+
+        return fingerprint.equals(new String(fp, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.neighborhood;
+
+import org.ranksys.core.util.tuples.Tuple2id;
+import org.ranksys.mehta.formats.MappedArray;
+import org.ranksys.mehta.runner.OutputFiles;
+import org.ranksys.recommenders.nn.neighborhood.Neighborhood;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+
+/**
+ * Neighborhood stored in a memory-mapped file in compressed sparse row
+ * layout: a header, the neighbors of all indices as (id int, weight float)
+ * records, the offsets of the neighbors of every index (long), the number of
+ * neighbors (long) and a trailer with the length of the file (see
+ * {@link OutputFiles}). Offsets go after the neighbors so that the file can
+ * be written as the rows are computed. The file is written once and can be
+ * mapped by later runs, so that the neighborhood is neither recomputed nor
+ * held on the heap.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class CsrNeighborhood implements Neighborhood {
+
+    private static final int MAGIC = 0x4d45484e;
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int NEIGHBOR_BYTES = Integer.BYTES + Float.BYTES;
+    private static final int CHUNK_SIZE = 4096;
+
+    private final int n;
+    private final long nnz;
+    private final MappedArray offsets;
+    private final MappedArray neighbors;
+
+    private CsrNeighborhood(int n, long nnz, MappedArray offsets, MappedArray neighbors) {
+        this.n = n;
+        this.nnz = nnz;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public long numNeighbors() {
+        return nnz;
+    }
+
+    @Override
+    public Stream<Tuple2id> getNeighbors(int idx) {
+        if (idx < 0 || idx >= n) {
+            return Stream.empty();
+        }
+        long from = offsets.getLong(idx);
+        long to = offsets.getLong(idx + 1);
+
+        return IntStream.range(0, (int) (to - from))
+                .mapToObj(j -> tuple(neighbors.getInt(from + j), neighbors.getFloat(from + j, Integer.BYTES)));
+    }
+
+    /**
+     * Computes the neighbors of the indices 0 to n - 1 in parallel, by chunks
+     * that are written to the file in order, so that only one chunk of rows
+     * and the offsets are held on the heap.
+     *
+     * @param file file to write to, replaced atomically
+     * @param neighborhood neighborhood to persist
+     * @param n number of indices
+     * @throws IOException when the file cannot be written
+     */
+    public static void write(Path file, Neighborhood neighborhood, int n) throws IOException {
+        OutputFiles.write(file, MAGIC, stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(0);
+
+            long[] offsets = new long[n + 1];
+            Tuple2id[][] rows = new Tuple2id[Math.min(n, CHUNK_SIZE)][];
+            for (int from = 0; from < n; from += CHUNK_SIZE) {
+                int chunk = from;
+                int to = Math.min(from + CHUNK_SIZE, n);
+                IntStream.range(from, to).parallel()
+                        .forEach(idx -> rows[idx - chunk] = neighborhood.getNeighbors(idx).toArray(Tuple2id[]::new));
+
+                for (int idx = from; idx < to; idx++) {
+                    Tuple2id[] row = rows[idx - from];
+                    for (Tuple2id t : row) {
+                        out.writeInt(t.v1);
+                        out.writeFloat((float) t.v2);
+                    }
+                    offsets[idx + 1] = offsets[idx] + row.length;
+                    rows[idx - from] = null;
+                }
+            }
+
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            out.writeLong(offsets[n]);
+            out.flush();
+        });
+    }
+
+    /**
+     * Checks that a neighborhood file exists and is complete.
+     *
+     * @param file neighborhood file
+     * @return true if the file can be mapped
+     * @throws IOException when the file cannot be read
+     */
+    public static boolean isValid(Path file) throws IOException {
+        if (!OutputFiles.isComplete(file, MAGIC)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            MappedByteBuffer header = channel.map(READ_ONLY, 0, HEADER_BYTES);
+            return header.getInt() == MAGIC && header.getInt() == VERSION;
+        }
+    }
+
+    public static CsrNeighborhood map(Path file) throws IOException {
+        if (!isValid(file)) {
+            throw new IOException("incomplete neighborhood file: " + file);
+        }
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            MappedByteBuffer header = channel.map(READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("not a neighborhood file: " + file);
+            }
+            int n = header.getInt();
+
+            long end = channel.size() - OutputFiles.TRAILER_BYTES - Long.BYTES;
+            long nnz = channel.map(READ_ONLY, end, Long.BYTES).getLong();
+            if (nnz < 0 || HEADER_BYTES + nnz * NEIGHBOR_BYTES + (n + 1L) * Long.BYTES != end) {
+                throw new IOException("inconsistent neighborhood file: " + file);
+            }
+
+            MappedArray neighbors = MappedArray.map(channel, HEADER_BYTES, nnz, NEIGHBOR_BYTES);
+            MappedArray offsets = MappedArray.map(channel, HEADER_BYTES + neighbors.byteSize(), n + 1L, Long.BYTES);
+
+            return new CsrNeighborhood(n, nnz, offsets, neighbors);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.preference;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.preference.fast.AbstractFastPreferenceData;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.core.preference.fast.IdxPref;
+import org.ranksys.mehta.formats.preference.PreferenceDeltas.Delta;
+import org.ranksys.mehta.formats.preference.PreferenceDeltas.MergePolicy;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Preference data with a delta laid over a base. The base is not copied:
+ * preferences of users and items without delta preferences come straight
+ * from it, and those of the others are merged on the fly with the delta,
+ * which is kept in compressed sparse row layout by user and by item. Pairs
+ * of the delta that are also in the base are merged with a
+ * {@link MergePolicy}; the others are added.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class DeltaPreferenceData<U, I> extends AbstractFastPreferenceData<U, I> {
+
+    private final FastPreferenceData<U, I> base;
+    private final MergePolicy policy;
+    private final int[] userOffsets;
+    private final int[] userIidxs;
+    private final double[] userValues;
+    private final boolean[] userAdded;
+    private final int[] itemOffsets;
+    private final int[] itemUidxs;
+    private final double[] itemValues;
+    private final boolean[] itemAdded;
+    private final int[] addedPerUser;
+    private final int[] addedPerItem;
+    private final int numPreferences;
+    private final int numUsersWithPreferences;
+    private final int numItemsWithPreferences;
+
+    DeltaPreferenceData(FastPreferenceData<U, I> base, Delta delta, MergePolicy policy,
+            FastUserIndex<U> users, FastItemIndex<I> items) {
+        super(users, items);
+        this.base = base;
+        this.policy = policy;
+        this.userOffsets = delta.offsets;
+        this.userIidxs = delta.iidxs;
+        this.userValues = delta.values;
+        this.userAdded = new boolean[delta.size()];
+        this.addedPerUser = new int[users.numUsers()];
+        this.addedPerItem = new int[items.numItems()];
+
+        int added = 0;
+        int[] itemCounts = new int[items.numItems() + 1];
+        for (int uidx = 0; uidx < users.numUsers(); uidx++) {
+            if (delta.isEmpty(uidx)) {
+                continue;
+            }
+            int[] known = new int[base.numItems(uidx)];
+            IntIterator iidxs = base.getUidxIidxs(uidx);
+            for (int j = 0; j < known.length; j++) {
+                known[j] = iidxs.nextInt();
+            }
+            Arrays.sort(known);
+            for (int j = userOffsets[uidx]; j < userOffsets[uidx + 1]; j++) {
+                int iidx = userIidxs[j];
+                itemCounts[iidx + 1]++;
+                if (Arrays.binarySearch(known, iidx) < 0) {
+                    userAdded[j] = true;
+                    addedPerUser[uidx]++;
+                    addedPerItem[iidx]++;
+                    added++;
+                }
+            }
+        }
+
+        // transposition of the delta, sorted by user within each item
+        for (int iidx = 0; iidx < items.numItems(); iidx++) {
+            itemCounts[iidx + 1] += itemCounts[iidx];
+        }
+        this.itemOffsets = itemCounts;
+        this.itemUidxs = new int[delta.size()];
+        this.itemValues = new double[delta.size()];
+        this.itemAdded = new boolean[delta.size()];
+        int[] next = Arrays.copyOf(itemOffsets, items.numItems());
+        for (int uidx = 0; uidx < users.numUsers(); uidx++) {
+            for (int j = userOffsets[uidx]; j < userOffsets[uidx + 1]; j++) {
+                int k = next[userIidxs[j]]++;
+                itemUidxs[k] = uidx;
+                itemValues[k] = userValues[j];
+                itemAdded[k] = userAdded[j];
+            }
+        }
+
+        this.numPreferences = base.numPreferences() + added;
+        this.numUsersWithPreferences = base.numUsersWithPreferences()
+                + (int) IntStream.range(0, users.numUsers()).filter(uidx -> addedPerUser[uidx] > 0 && base.numItems(uidx) == 0).count();
+        this.numItemsWithPreferences = base.numItemsWithPreferences()
+                + (int) IntStream.range(0, items.numItems()).filter(iidx -> addedPerItem[iidx] > 0 && base.numUsers(iidx) == 0).count();
+    }
+
+    @Override
+    public int numUsers(int iidx) {
+        return base.numUsers(iidx) + addedPerItem[iidx];
+    }
+
+    @Override
+    public int numItems(int uidx) {
+        return base.numItems(uidx) + addedPerUser[uidx];
+    }
+
+    @Override
+    public int numPreferences() {
+        return numPreferences;
+    }
+
+    @Override
+    public int numUsersWithPreferences() {
+        return numUsersWithPreferences;
+    }
+
+    @Override
+    public int numItemsWithPreferences() {
+        return numItemsWithPreferences;
+    }
+
+    @Override
+    public IntStream getUidxWithPreferences() {
+        return IntStream.range(0, numUsers()).filter(uidx -> numItems(uidx) > 0);
+    }
+
+    @Override
+    public IntStream getIidxWithPreferences() {
+        return IntStream.range(0, numItems()).filter(iidx -> numUsers(iidx) > 0);
+    }
+
+    @Override
+    public Stream<? extends IdxPref> getUidxPreferences(int uidx) {
+        return merge(base.getUidxPreferences(uidx), userOffsets[uidx], userOffsets[uidx + 1], userIidxs, userValues, userAdded);
+    }
+
+    @Override
+    public Stream<? extends IdxPref> getIidxPreferences(int iidx) {
+        return merge(base.getIidxPreferences(iidx), itemOffsets[iidx], itemOffsets[iidx + 1], itemUidxs, itemValues, itemAdded);
+    }
+
+    @Override
+    public boolean useIteratorsPreferentially() {
+        return false;
+    }
+
+    private Stream<? extends IdxPref> merge(Stream<? extends IdxPref> prefs, int from, int to,
+            int[] idxs, double[] values, boolean[] added) {
+        if (from == to) {
+            return prefs;
+        }
+
+        Stream<IdxPref> merged = prefs.map(pref -> {
+            int j = Arrays.binarySearch(idxs, from, to, pref.v1);
+            return j < 0 ? pref : new IdxPref(pref.v1, policy.merge(pref.v2, values[j]));
+        });
+        Stream<IdxPref> appended = IntStream.range(from, to)
+                .filter(j -> added[j])
+                .mapToObj(j -> new IdxPref(idxs[j], values[j]));
+
+        return Stream.concat(merged, appended);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.preference;
+
+import it.unimi.dsi.fastutil.doubles.AbstractDoubleIterator;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.AbstractIntIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.preference.fast.AbstractFastPreferenceData;
+import org.ranksys.core.preference.fast.IdxPref;
+import org.ranksys.mehta.formats.MappedArray;
+
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Preference data over memory-mapped arrays in compressed sparse row layout,
+ * by user and by item. Each side has the offsets of the preferences of every
+ * index (long) and the preferences themselves as records of the other index
+ * (int) and the value (double), sorted by index. Nothing but the user and
+ * item indices is held on the heap.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class MappedPreferenceData<U, I> extends AbstractFastPreferenceData<U, I> {
+
+    static final int RECORD_BYTES = Integer.BYTES + Double.BYTES;
+
+    private final long numPreferences;
+    private final int numUsersWithPreferences;
+    private final int numItemsWithPreferences;
+    private final MappedArray userOffsets;
+    private final MappedArray userPrefs;
+    private final MappedArray itemOffsets;
+    private final MappedArray itemPrefs;
+
+    MappedPreferenceData(FastUserIndex<U> users, FastItemIndex<I> items,
+            long numPreferences, int numUsersWithPreferences, int numItemsWithPreferences,
+            MappedArray userOffsets, MappedArray userPrefs, MappedArray itemOffsets, MappedArray itemPrefs) {
+        super(users, items);
+        this.numPreferences = numPreferences;
+        this.numUsersWithPreferences = numUsersWithPreferences;
+        this.numItemsWithPreferences = numItemsWithPreferences;
+        this.userOffsets = userOffsets;
+        this.userPrefs = userPrefs;
+        this.itemOffsets = itemOffsets;
+        this.itemPrefs = itemPrefs;
+    }
+
+    @Override
+    public int numUsers(int iidx) {
+        return (int) (itemOffsets.getLong(iidx + 1) - itemOffsets.getLong(iidx));
+    }
+
+    @Override
+    public int numItems(int uidx) {
+        return (int) (userOffsets.getLong(uidx + 1) - userOffsets.getLong(uidx));
+    }
+
+    @Override
+    public int numPreferences() {
+        return (int) numPreferences;
+    }
+
+    @Override
+    public int numUsersWithPreferences() {
+        return numUsersWithPreferences;
+    }
+
+    @Override
+    public int numItemsWithPreferences() {
+        return numItemsWithPreferences;
+    }
+
+    @Override
+    public IntStream getUidxWithPreferences() {
+        return IntStream.range(0, numUsers()).filter(uidx -> numItems(uidx) > 0);
+    }
+
+    @Override
+    public IntStream getIidxWithPreferences() {
+        return IntStream.range(0, numItems()).filter(iidx -> numUsers(iidx) > 0);
+    }
+
+    @Override
+    public Stream<? extends IdxPref> getUidxPreferences(int uidx) {
+        return getPreferences(userOffsets, userPrefs, uidx);
+    }
+
+    @Override
+    public Stream<? extends IdxPref> getIidxPreferences(int iidx) {
+        return getPreferences(itemOffsets, itemPrefs, iidx);
+    }
+
+    @Override
+    public IntIterator getUidxIidxs(int uidx) {
+        return getIdxs(userOffsets, userPrefs, uidx);
+    }
+
+    @Override
+    public DoubleIterator getUidxVs(int uidx) {
+        return getVs(userOffsets, userPrefs, uidx);
+    }
+
+    @Override
+    public IntIterator getIidxUidxs(int iidx) {
+        return getIdxs(itemOffsets, itemPrefs, iidx);
+    }
+
+    @Override
+    public DoubleIterator getIidxVs(int iidx) {
+        return getVs(itemOffsets, itemPrefs, iidx);
+    }
+
+    @Override
+    public boolean useIteratorsPreferentially() {
+        return true;
+    }
+
+    private static Stream<IdxPref> getPreferences(MappedArray offsets, MappedArray prefs, int idx) {
+        return LongStream.range(offsets.getLong(idx), offsets.getLong(idx + 1))
+                .mapToObj(j -> new IdxPref(prefs.getInt(j), prefs.getDouble(j, Integer.BYTES)));
+    }
+
+    private static IntIterator getIdxs(MappedArray offsets, MappedArray prefs, int idx) {
+        long from = offsets.getLong(idx);
+        long to = offsets.getLong(idx + 1);
+        return new AbstractIntIterator() {
+
+            private long j = from;
+
+            @Override
+            public boolean hasNext() {
+                return j < to;
+            }
+
+            @Override
+            public int nextInt() {
+                return prefs.getInt(j++);
+            }
+        };
+    }
+
+    private static DoubleIterator getVs(MappedArray offsets, MappedArray prefs, int idx) {
+        long from = offsets.getLong(idx);
+        long to = offsets.getLong(idx + 1);
+        return new AbstractDoubleIterator() {
+
+            private long j = from;
+
+            @Override
+            public boolean hasNext() {
+                return j < to;
+            }
+
+            @Override
+            public double nextDouble() {
+                return prefs.getDouble(j++, Integer.BYTES);
+            }
+        };
+    }
+}
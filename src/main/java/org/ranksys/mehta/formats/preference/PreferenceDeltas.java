@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.preference;
+
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.mehta.config.MehtaProperties;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+
+/**
+ * Base preference file followed by an ordered list of delta files in the
+ * same user-item-value format. The state after applying the first
+ * {@code n} deltas has its own {@link PreferenceSnapshot}, stored next to
+ * the n-th delta, so that adding a new delta only requires loading the
+ * latest snapshot and parsing the deltas that came after it.
+ *
+ * Deltas refer to users and items of the existing indices: unknown users
+ * or items are skipped. Values of repeated user-item pairs, within the
+ * deltas or between the deltas and the preferences they are applied to,
+ * are merged with a {@link MergePolicy}: a rating replaces the previous
+ * rating of the pair, whereas counts of implicit feedback are added up.
+ * Applying deltas does not copy the preferences they are applied to (see
+ * {@link DeltaPreferenceData}).
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class PreferenceDeltas {
+
+    private static final Logger LOG = Logger.getLogger(PreferenceDeltas.class.getName());
+
+    private final Path preferencesFile;
+    private final Path usersFile;
+    private final Path itemsFile;
+    private final List<Path> deltaFiles;
+    private final MergePolicy policy;
+
+    public PreferenceDeltas(Path preferencesFile, Path usersFile, Path itemsFile, List<Path> deltaFiles, MergePolicy policy) {
+        this.preferencesFile = preferencesFile;
+        this.usersFile = usersFile;
+        this.itemsFile = itemsFile;
+        this.deltaFiles = deltaFiles;
+        this.policy = policy;
+    }
+
+    public int size() {
+        return deltaFiles.size();
+    }
+
+    public PreferenceSnapshot getSnapshot(int n) throws IOException {
+        return new PreferenceSnapshot(preferencesFile, usersFile, itemsFile, deltaFiles.subList(0, n), variant(n));
+    }
+
+    public String getFingerprint(int n) throws IOException {
+        return MehtaProperties.fingerprint(usersFile, itemsFile, preferencesFile)
+                + MehtaProperties.fingerprint(deltaFiles.subList(0, n).toArray(new Path[0]))
+                + variant(n);
+    }
+
+    private String variant(int n) {
+        return n == 0 ? "" : "merge=" + policy + "\n";
+    }
+
+    /**
+     * Latest state with a valid snapshot.
+     *
+     * @return number of deltas covered by the snapshot, or -1 if there is no
+     * valid snapshot, not even of the base file
+     * @throws IOException when the snapshots cannot be checked
+     */
+    public int getLastSnapshot() throws IOException {
+        for (int n = deltaFiles.size(); n >= 0; n--) {
+            if (getSnapshot(n).isValid()) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Applies the deltas after the first {@code from} to the preferences of
+     * that state.
+     *
+     * @param data preferences after the first {@code from} deltas
+     * @param from number of deltas already in {@code data}
+     * @param users user index
+     * @param items item index
+     * @return preferences after all the deltas
+     * @throws IOException when a delta file cannot be read
+     */
+    public FastPreferenceData<String, String> apply(FastPreferenceData<String, String> data, int from,
+            FastUserIndex<String> users, FastItemIndex<String> items) throws IOException {
+        Delta delta = read(from, users, items);
+        LOG.log(Level.INFO, "applying {0} preferences of {1} deltas", new Object[]{delta.size(), deltaFiles.size() - from});
+
+        return new DeltaPreferenceData<>(data, delta, policy, users, items);
+    }
+
+    /**
+     * User-item pairs of the deltas after the first {@code from} that are
+     * not in the preferences of that state.
+     *
+     * @param data preferences after the first {@code from} deltas
+     * @param from number of deltas already in {@code data}
+     * @param users user index
+     * @param items item index
+     * @return new pairs, with the merged values of the deltas
+     * @throws IOException when a delta file cannot be read
+     */
+    public Delta getNewPairs(FastPreferenceData<String, String> data, int from,
+            FastUserIndex<String> users, FastItemIndex<String> items) throws IOException {
+        Delta delta = read(from, users, items);
+
+        int[] offsets = new int[delta.offsets.length];
+        int[] iidxs = new int[delta.size()];
+        double[] values = new double[delta.size()];
+        int m = 0;
+        for (int uidx = 0; uidx < offsets.length - 1; uidx++) {
+            offsets[uidx] = m;
+            if (delta.isEmpty(uidx)) {
+                continue;
+            }
+            int[] known = data.getUidxPreferences(uidx).mapToInt(pref -> pref.v1).sorted().toArray();
+            for (int j = delta.offsets[uidx]; j < delta.offsets[uidx + 1]; j++) {
+                if (Arrays.binarySearch(known, delta.iidxs[j]) < 0) {
+                    iidxs[m] = delta.iidxs[j];
+                    values[m] = delta.values[j];
+                    m++;
+                }
+            }
+        }
+        offsets[offsets.length - 1] = m;
+
+        return new Delta(offsets, Arrays.copyOf(iidxs, m), Arrays.copyOf(values, m));
+    }
+
+    private Delta read(int from, FastUserIndex<String> users, FastItemIndex<String> items) throws IOException {
+        int n = 0;
+        int skipped = 0;
+        int[] uidxs = new int[1024];
+        int[] iidxs = new int[1024];
+        double[] values = new double[1024];
+
+        for (Path deltaFile : deltaFiles.subList(from, deltaFiles.size())) {
+            try (BufferedReader reader = Files.newBufferedReader(deltaFile)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    String[] tokens = line.split("\t", 4);
+                    int uidx = users.user2uidx(tokens[0]);
+                    int iidx = tokens.length > 1 ? items.item2iidx(tokens[1]) : -1;
+                    if (uidx < 0 || iidx < 0) {
+                        skipped++;
+                        continue;
+                    }
+                    if (n == uidxs.length) {
+                        uidxs = Arrays.copyOf(uidxs, 2 * n);
+                        iidxs = Arrays.copyOf(iidxs, 2 * n);
+                        values = Arrays.copyOf(values, 2 * n);
+                    }
+                    uidxs[n] = uidx;
+                    iidxs[n] = iidx;
+                    values[n] = tokens.length > 2 ? Double.parseDouble(tokens[2]) : 1.0;
+                    n++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            LOG.log(Level.WARNING, "skipped {0} delta preferences of unknown users or items", skipped);
+        }
+
+        // counting sort by user, then by item within each user, merging repeated pairs in order
+        int numUsers = users.numUsers();
+        int[] offsets = new int[numUsers + 1];
+        for (int k = 0; k < n; k++) {
+            offsets[uidxs[k] + 1]++;
+        }
+        for (int uidx = 0; uidx < numUsers; uidx++) {
+            offsets[uidx + 1] += offsets[uidx];
+        }
+        int[] next = Arrays.copyOf(offsets, numUsers);
+        long[] order = new long[n];
+        for (int k = 0; k < n; k++) {
+            order[next[uidxs[k]]++] = ((long) iidxs[k] << 32) | k;
+        }
+
+        int[] sortedIidxs = new int[n];
+        double[] sortedValues = new double[n];
+        int m = 0;
+        for (int uidx = 0; uidx < numUsers; uidx++) {
+            int start = offsets[uidx];
+            int end = offsets[uidx + 1];
+            offsets[uidx] = m;
+            Arrays.sort(order, start, end);
+            for (int k = start; k < end; k++) {
+                int iidx = (int) (order[k] >>> 32);
+                double value = values[(int) order[k]];
+                if (m > offsets[uidx] && sortedIidxs[m - 1] == iidx) {
+                    sortedValues[m - 1] = policy.merge(sortedValues[m - 1], value);
+                } else {
+                    sortedIidxs[m] = iidx;
+                    sortedValues[m] = value;
+                    m++;
+                }
+            }
+        }
+        offsets[numUsers] = m;
+
+        return new Delta(offsets, Arrays.copyOf(sortedIidxs, m), Arrays.copyOf(sortedValues, m));
+    }
+
+    /**
+     * How the value of a user-item pair is updated by a later value of the
+     * same pair.
+     */
+    public enum MergePolicy {
+
+        /**
+         * The later value replaces the earlier one, as for ratings.
+         */
+        REPLACE,
+        /**
+         * Values are added up, as for counts of implicit feedback.
+         */
+        SUM;
+
+        public double merge(double before, double after) {
+            return this == SUM ? before + after : after;
+        }
+    }
+
+    /**
+     * Delta preferences grouped by user, sorted by item within each user.
+     */
+    public static class Delta {
+
+        final int[] offsets;
+        final int[] iidxs;
+        final double[] values;
+
+        private Delta(int[] offsets, int[] iidxs, double[] values) {
+            this.offsets = offsets;
+            this.iidxs = iidxs;
+            this.values = values;
+        }
+
+        public int size() {
+            return iidxs.length;
+        }
+
+        public int size(int uidx) {
+            return offsets[uidx + 1] - offsets[uidx];
+        }
+
+        public boolean isEmpty(int uidx) {
+            return offsets[uidx] == offsets[uidx + 1];
+        }
+
+        public IntStream getUidxs() {
+            return IntStream.range(0, offsets.length - 1).filter(uidx -> !isEmpty(uidx));
+        }
+
+        public int[] getIidxs(int uidx) {
+            return Arrays.copyOfRange(iidxs, offsets[uidx], offsets[uidx + 1]);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.preference;
+
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.core.preference.fast.IdxPref;
+import org.ranksys.mehta.config.MehtaProperties;
+import org.ranksys.mehta.formats.MappedArray;
+import org.ranksys.mehta.runner.OutputFiles;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Binary snapshot of preference data stored next to its source file. The
+ * snapshot keeps the preferences by user and by item index in CSR layout
+ * and is read back as a {@link MappedPreferenceData}, so that loading it
+ * only maps the file. It is only considered valid while the source, users
+ * and items files keep the size and modification time they had when it was
+ * written, and while its trailer matches its length.
+ *
+ * A snapshot may also cover a base file followed by a list of delta files
+ * (see {@link PreferenceDeltas}); it is then stored next to the last delta.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class PreferenceSnapshot {
+
+    private static final int MAGIC = 0x4d454854;
+    private static final int VERSION = 3;
+    private static final int MAX_FINGERPRINT_BYTES = 1 << 16;
+
+    private final Path snapshotFile;
+    private final String fingerprint;
+
+    public PreferenceSnapshot(Path preferencesFile, Path usersFile, Path itemsFile) throws IOException {
+        this(preferencesFile, usersFile, itemsFile, Collections.emptyList());
+    }
+
+    public PreferenceSnapshot(Path preferencesFile, Path usersFile, Path itemsFile, List<Path> deltaFiles) throws IOException {
+        this(preferencesFile, usersFile, itemsFile, deltaFiles, "");
+    }
+
+    /**
+     * Snapshot of a base file followed by delta files.
+     *
+     * @param preferencesFile base preference file
+     * @param usersFile users file
+     * @param itemsFile items file
+     * @param deltaFiles delta files
+     * @param variant description of how the deltas were applied, part of
+     * the fingerprint of the snapshot
+     * @throws IOException when the files cannot be checked
+     */
+    public PreferenceSnapshot(Path preferencesFile, Path usersFile, Path itemsFile, List<Path> deltaFiles, String variant) throws IOException {
+        Path lastFile = deltaFiles.isEmpty() ? preferencesFile : deltaFiles.get(deltaFiles.size() - 1);
+        this.snapshotFile = lastFile.resolveSibling(lastFile.getFileName() + ".snapshot");
+        this.fingerprint = MehtaProperties.fingerprint(preferencesFile, usersFile, itemsFile)
+                + MehtaProperties.fingerprint(deltaFiles.toArray(new Path[0]))
+                + variant;
+    }
+
+    public Path getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public boolean isValid() throws IOException {
+        if (!OutputFiles.isComplete(snapshotFile, MAGIC)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile, READ)) {
+            return readHeader(channel) > 0;
+        }
+    }
+
+    public <U, I> FastPreferenceData<U, I> read(FastUserIndex<U> users, FastItemIndex<I> items) throws IOException {
+        if (!OutputFiles.isComplete(snapshotFile, MAGIC)) {
+            throw new IOException("incomplete snapshot " + snapshotFile);
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile, READ)) {
+            long position = readHeader(channel);
+            if (position < 0) {
+                throw new IOException("stale snapshot " + snapshotFile);
+            }
+
+            ByteBuffer counts = read(channel, position, 4 * Integer.BYTES + Long.BYTES);
+            if (counts == null) {
+                throw new IOException("truncated snapshot " + snapshotFile);
+            }
+            int numUsers = counts.getInt();
+            int numItems = counts.getInt();
+            int numUsersWithPreferences = counts.getInt();
+            int numItemsWithPreferences = counts.getInt();
+            long numPreferences = counts.getLong();
+            position += counts.capacity();
+            if (numUsers != users.numUsers() || numItems != items.numItems()) {
+                throw new IOException("snapshot " + snapshotFile + " does not match the user and item indices");
+            }
+
+            MappedArray userOffsets = MappedArray.map(channel, position, numUsers + 1L, Long.BYTES);
+            position += userOffsets.byteSize();
+            MappedArray userPrefs = MappedArray.map(channel, position, numPreferences, MappedPreferenceData.RECORD_BYTES);
+            position += userPrefs.byteSize();
+            MappedArray itemOffsets = MappedArray.map(channel, position, numItems + 1L, Long.BYTES);
+            position += itemOffsets.byteSize();
+            MappedArray itemPrefs = MappedArray.map(channel, position, numPreferences, MappedPreferenceData.RECORD_BYTES);
+            position += itemPrefs.byteSize();
+            if (position + OutputFiles.TRAILER_BYTES != channel.size()) {
+                throw new IOException("snapshot " + snapshotFile + " has an unexpected length");
+            }
+
+            return new MappedPreferenceData<>(users, items, numPreferences, numUsersWithPreferences, numItemsWithPreferences,
+                    userOffsets, userPrefs, itemOffsets, itemPrefs);
+        }
+    }
+
+    public void write(FastPreferenceData<?, ?> data) throws IOException {
+        OutputFiles.write(snapshotFile, MAGIC, stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            byte[] fp = fingerprint.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(fp.length);
+            out.write(fp);
+
+            long numPreferences = 0;
+            for (int uidx = 0; uidx < data.numUsers(); uidx++) {
+                numPreferences += data.numItems(uidx);
+            }
+            out.writeInt(data.numUsers());
+            out.writeInt(data.numItems());
+            out.writeInt((int) data.getUidxWithPreferences().count());
+            out.writeInt((int) data.getIidxWithPreferences().count());
+            out.writeLong(numPreferences);
+
+            writeSide(out, data.numUsers(), data::numItems, data::getUidxPreferences);
+            writeSide(out, data.numItems(), data::numUsers, data::getIidxPreferences);
+            out.flush();
+        });
+    }
+
+    private static void writeSide(DataOutputStream out, int n, IntUnaryOperator sizes,
+            IntFunction<Stream<? extends IdxPref>> prefs) throws IOException {
+        long offset = 0;
+        out.writeLong(offset);
+        for (int idx = 0; idx < n; idx++) {
+            offset += sizes.applyAsInt(idx);
+            out.writeLong(offset);
+        }
+        for (int idx = 0; idx < n; idx++) {
+            IdxPref[] row = prefs.apply(idx).toArray(IdxPref[]::new);
+            if (row.length != sizes.applyAsInt(idx)) {
+                throw new IOException("inconsistent number of preferences of index " + idx);
+            }
+            Arrays.sort(row, (p1, p2) -> Integer.compare(p1.v1, p2.v1));
+            for (IdxPref pref : row) {
+                out.writeInt(pref.v1);
+                out.writeDouble(pref.v2);
+            }
+        }
+    }
+
+    /**
+     * Reads and checks the header of the snapshot.
+     *
+     * @param channel channel of the snapshot file
+     * @return position after the header, or -1 if the snapshot is stale
+     * @throws IOException when the file cannot be read
+     */
+    private long readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = read(channel, 0, 3 * Integer.BYTES);
+        if (header == null || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return -1;
+        }
+        int fpLength = header.getInt();
+        if (fpLength < 0 || fpLength > MAX_FINGERPRINT_BYTES) {
+            return -1;
+        }
+        ByteBuffer fp = read(channel, header.capacity(), fpLength);
+        if (fp == null || !fingerprint.equals(new String(fp.array(), StandardCharsets.UTF_8))) {
+            return -1;
+        }
+
+        return header.capacity() + fpLength;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        if (position + length > channel.size()) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
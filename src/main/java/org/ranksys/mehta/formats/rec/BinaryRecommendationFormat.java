@@ -0,0 +1,479 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.rec;
+
+import org.ranksys.core.Recommendation;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.util.tuples.Tuple2od;
+import org.ranksys.formats.parsing.Parser;
+import org.ranksys.formats.rec.RecommendationFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+
+/**
+ * Binary recommendation format with item indices and float scores stored in
+ * columnar blocks. The file is laid out as
+ *
+ * <ul>
+ * <li>a header (magic, version);</li>
+ * <li>blocks of up to {@value #BLOCK_USERS} users, each with its number of
+ * users and the columns of list lengths, item indices and scores;</li>
+ * <li>a table with the position of the items and scores and the length of
+ * every written recommendation, in the order they were written;</li>
+ * <li>the dictionary of the written users, in the same order, followed by
+ * an open-addressing hash table of its entries, and the dictionary of the
+ * items that appear in the recommendations; every dictionary is the
+ * position of each of its entries and the entries as UTF-8 strings;</li>
+ * <li>a trailer with the positions of the table and the dictionaries.</li>
+ * </ul>
+ *
+ * Item indices are local to the file, assigned in order of appearance, so
+ * that the size of a file only depends on what was written to it and not on
+ * the size of the indices of the run: checkpoint segments and shard parts
+ * are as small as their content. The reader maps the file in memory,
+ * decodes recommendations and dictionary entries lazily and finds the
+ * recommendation of any user through the hash table with
+ * {@link BinaryReader#getRecommendation(Object)}, without decoding the
+ * dictionaries.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class BinaryRecommendationFormat<U, I> implements RecommendationFormat<U, I> {
+
+    private static final int MAGIC = 0x4d454852;
+    private static final int VERSION = 3;
+    private static final int BLOCK_USERS = 1024;
+    private static final int TABLE_ENTRY_BYTES = 2 * Long.BYTES + Integer.BYTES;
+    private static final int TRAILER_BYTES = 2 * Long.BYTES + Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int SEGMENT_BITS = 30;
+
+    private final FastItemIndex<I> items;
+    private final Parser<U> up;
+    private final Parser<I> ip;
+
+    public BinaryRecommendationFormat(FastItemIndex<I> items, Parser<U> up, Parser<I> ip) {
+        this.items = items;
+        this.up = up;
+        this.ip = ip;
+    }
+
+    @Override
+    public Writer<U, I> getWriter(OutputStream out) throws IOException {
+        return new BinaryWriter(out);
+    }
+
+    @Override
+    public BinaryReader getReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            long size = channel.size();
+            ByteBuffer[] segments = new ByteBuffer[(int) ((size + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS)];
+            for (int s = 0; s < segments.length; s++) {
+                long first = (long) s << SEGMENT_BITS;
+                segments[s] = channel.map(READ_ONLY, first, Math.min(size - first, 1L << SEGMENT_BITS))
+                        .order(ByteOrder.BIG_ENDIAN);
+            }
+            return new BinaryReader(segments, SEGMENT_BITS, size);
+        }
+    }
+
+    @Override
+    public BinaryReader getReader(InputStream in) throws IOException {
+        return getReader(in, SEGMENT_BITS);
+    }
+
+    /**
+     * Reads a stream in heap segments of 2^segmentBits bytes, addressed the
+     * same way as the mapped segments of a file.
+     */
+    BinaryReader getReader(InputStream in, int segmentBits) throws IOException {
+        List<ByteBuffer> segments = new ArrayList<>();
+        long size = 0;
+        try (InputStream stream = in) {
+            byte[] segment = new byte[Math.min(BUFFER_SIZE, 1 << segmentBits)];
+            int n = 0;
+            while (true) {
+                if (n == segment.length) {
+                    if (n == 1 << segmentBits) {
+                        segments.add(ByteBuffer.wrap(segment));
+                        segment = new byte[Math.min(BUFFER_SIZE, 1 << segmentBits)];
+                        n = 0;
+                    } else {
+                        segment = Arrays.copyOf(segment, Math.min(2 * segment.length, 1 << segmentBits));
+                    }
+                }
+                int m = stream.read(segment, n, segment.length - n);
+                if (m < 0) {
+                    break;
+                }
+                n += m;
+                size += m;
+            }
+            if (n > 0) {
+                segments.add(ByteBuffer.wrap(segment, 0, n).slice());
+            }
+        }
+
+        return new BinaryReader(segments.toArray(new ByteBuffer[segments.size()]), segmentBits, size);
+    }
+
+    /**
+     * Size of the hash table of a dictionary: a power of two with at least
+     * half of the slots empty.
+     */
+    private static int hashTableSize(int n) {
+        int size = 2;
+        while (size < 2L * n) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int hash(String id) {
+        int h = id.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private class BinaryWriter implements Writer<U, I> {
+
+        private final DataOutputStream out;
+        private final List<Recommendation<U, I>> block;
+        private final List<U> writtenUsers;
+        private final List<I> writtenItems;
+        private final int[] localIidxs;
+        private long[] table;
+        private int numWritten;
+        private long position;
+
+        public BinaryWriter(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+            this.block = new ArrayList<>(BLOCK_USERS);
+            this.writtenUsers = new ArrayList<>();
+            this.writtenItems = new ArrayList<>();
+            this.localIidxs = new int[items.numItems()];
+            Arrays.fill(localIidxs, -1);
+            this.table = new long[3 * BLOCK_USERS];
+            this.numWritten = 0;
+
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            this.position = 2 * Integer.BYTES;
+        }
+
+        @Override
+        public void write(Recommendation<U, I> recommendation) throws IOException {
+            block.add(recommendation);
+            if (block.size() == BLOCK_USERS) {
+                writeBlock();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            int n = block.size();
+            int total = 0;
+            for (Recommendation<U, I> recommendation : block) {
+                total += recommendation.getItems().size();
+            }
+
+            out.writeInt(n);
+            for (Recommendation<U, I> recommendation : block) {
+                out.writeInt(recommendation.getItems().size());
+            }
+            position += (1L + n) * Integer.BYTES;
+
+            if (3 * (numWritten + n) > table.length) {
+                table = Arrays.copyOf(table, Math.max(2 * table.length, 3 * (numWritten + n)));
+            }
+            long itemsPosition = position;
+            long scoresPosition = position + (long) total * Integer.BYTES;
+            for (Recommendation<U, I> recommendation : block) {
+                List<Tuple2od<I>> recItems = recommendation.getItems();
+                table[3 * numWritten] = itemsPosition;
+                table[3 * numWritten + 1] = scoresPosition;
+                table[3 * numWritten + 2] = recItems.size();
+                writtenUsers.add(recommendation.getUser());
+                numWritten++;
+                itemsPosition += (long) recItems.size() * Integer.BYTES;
+                scoresPosition += (long) recItems.size() * Float.BYTES;
+
+                for (Tuple2od<I> is : recItems) {
+                    out.writeInt(localIidx(is.v1));
+                }
+            }
+            for (Recommendation<U, I> recommendation : block) {
+                for (Tuple2od<I> is : recommendation.getItems()) {
+                    out.writeFloat((float) is.v2);
+                }
+            }
+            position += (long) total * (Integer.BYTES + Float.BYTES);
+
+            block.clear();
+        }
+
+        private int localIidx(I item) throws IOException {
+            int iidx = items.item2iidx(item);
+            if (iidx < 0) {
+                throw new IOException("unknown item " + item);
+            }
+            if (localIidxs[iidx] < 0) {
+                localIidxs[iidx] = writtenItems.size();
+                writtenItems.add(item);
+            }
+            return localIidxs[iidx];
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!block.isEmpty()) {
+                writeBlock();
+            }
+
+            long tablePosition = position;
+            out.writeInt(numWritten);
+            for (int i = 0; i < numWritten; i++) {
+                out.writeLong(table[3 * i]);
+                out.writeLong(table[3 * i + 1]);
+                out.writeInt((int) table[3 * i + 2]);
+            }
+            position += Integer.BYTES + (long) numWritten * TABLE_ENTRY_BYTES;
+
+            long dictionaryPosition = position;
+            writeDictionary(writtenUsers);
+            writeHashTable(writtenUsers);
+            writeDictionary(writtenItems);
+
+            out.writeLong(tablePosition);
+            out.writeLong(dictionaryPosition);
+            out.writeInt(MAGIC);
+            out.close();
+        }
+
+        private void writeDictionary(List<?> ids) throws IOException {
+            out.writeInt(ids.size());
+            position += Integer.BYTES;
+
+            long entryPosition = position + (ids.size() + 1L) * Long.BYTES;
+            out.writeLong(entryPosition);
+            for (Object id : ids) {
+                entryPosition += id.toString().getBytes(StandardCharsets.UTF_8).length;
+                out.writeLong(entryPosition);
+            }
+            for (Object id : ids) {
+                out.write(id.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            position = entryPosition;
+        }
+
+        private void writeHashTable(List<?> ids) throws IOException {
+            int[] slots = new int[hashTableSize(ids.size())];
+            for (int entry = 0; entry < ids.size(); entry++) {
+                int slot = hash(ids.get(entry).toString()) & (slots.length - 1);
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & (slots.length - 1);
+                }
+                slots[slot] = entry + 1;
+            }
+
+            out.writeInt(slots.length);
+            for (int slot : slots) {
+                out.writeInt(slot);
+            }
+            position += (1L + slots.length) * Integer.BYTES;
+        }
+    }
+
+    /**
+     * Reader of a mapped binary recommendation file.
+     */
+    public class BinaryReader implements Reader<U, I> {
+
+        private final ByteBuffer[] segments;
+        private final int segmentBits;
+        private final long segmentMask;
+        private final long tablePosition;
+        private final int numUsers;
+        private final Dictionary<U> userDictionary;
+        private final long hashTablePosition;
+        private final int hashTableSize;
+        private final Dictionary<I> itemDictionary;
+
+        private BinaryReader(ByteBuffer[] segments, int segmentBits, long size) throws IOException {
+            this.segments = segments;
+            this.segmentBits = segmentBits;
+            this.segmentMask = (1L << segmentBits) - 1;
+
+            if (size < 2 * Integer.BYTES + TRAILER_BYTES || getInt(0) != MAGIC || getInt(Integer.BYTES) != VERSION
+                    || getInt(size - Integer.BYTES) != MAGIC) {
+                throw new IOException("not a binary recommendation file");
+            }
+            long trailer = size - TRAILER_BYTES;
+            this.tablePosition = getLong(trailer);
+            long dictionaryPosition = getLong(trailer + Long.BYTES);
+            if (tablePosition < 2 * Integer.BYTES || dictionaryPosition < tablePosition || dictionaryPosition > trailer) {
+                throw new IOException("corrupt binary recommendation file");
+            }
+            this.numUsers = getInt(tablePosition);
+
+            this.userDictionary = new Dictionary<>(dictionaryPosition, trailer, up, false);
+            this.hashTablePosition = userDictionary.end();
+            this.hashTableSize = hashTablePosition + Integer.BYTES <= trailer ? getInt(hashTablePosition) : -1;
+            if (userDictionary.size() != numUsers || hashTableSize != hashTableSize(numUsers)
+                    || hashTablePosition + (1L + hashTableSize) * Integer.BYTES > trailer) {
+                throw new IOException("corrupt binary recommendation file");
+            }
+            // items are few and repeated in many recommendations, so they are parsed once
+            this.itemDictionary = new Dictionary<>(hashTablePosition + (1L + hashTableSize) * Integer.BYTES, trailer, ip, true);
+        }
+
+        public int numUsers() {
+            return numUsers;
+        }
+
+        @Override
+        public Stream<Recommendation<U, I>> readAll() {
+            return IntStream.range(0, numUsers).mapToObj(this::decode);
+        }
+
+        public Optional<Recommendation<U, I>> getRecommendation(U user) {
+            String key = user.toString();
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            int mask = hashTableSize - 1;
+            for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+                int entry = getInt(hashTablePosition + Integer.BYTES + (long) slot * Integer.BYTES) - 1;
+                if (entry < 0) {
+                    return Optional.empty();
+                }
+                if (userDictionary.matches(entry, bytes)) {
+                    return Optional.of(decode(entry));
+                }
+            }
+        }
+
+        private Recommendation<U, I> decode(int entry) {
+            long position = tablePosition + Integer.BYTES + (long) entry * TABLE_ENTRY_BYTES;
+            long itemsPosition = getLong(position);
+            long scoresPosition = getLong(position + Long.BYTES);
+            int length = getInt(position + 2 * Long.BYTES);
+
+            List<Tuple2od<I>> recItems = new ArrayList<>(length);
+            for (int j = 0; j < length; j++) {
+                I item = itemDictionary.get(getInt(itemsPosition + (long) j * Integer.BYTES));
+                float score = Float.intBitsToFloat(getInt(scoresPosition + (long) j * Float.BYTES));
+                recItems.add(tuple(item, score));
+            }
+
+            return new Recommendation<>(userDictionary.get(entry), recItems);
+        }
+
+        /**
+         * Dictionary decoded on demand from the positions of its entries.
+         */
+        private class Dictionary<T> {
+
+            private final long offsetsPosition;
+            private final int size;
+            private final Parser<T> parser;
+            private final AtomicReferenceArray<T> parsed;
+
+            public Dictionary(long position, long limit, Parser<T> parser, boolean cached) throws IOException {
+                this.size = position + Integer.BYTES <= limit ? getInt(position) : -1;
+                this.offsetsPosition = position + Integer.BYTES;
+                if (size < 0 || offsetsPosition + (size + 1L) * Long.BYTES > limit
+                        || getLong(offsetsPosition) != offsetsPosition + (size + 1L) * Long.BYTES || end() > limit) {
+                    throw new IOException("corrupt binary recommendation file");
+                }
+                this.parser = parser;
+                this.parsed = cached ? new AtomicReferenceArray<>(size) : null;
+            }
+
+            public int size() {
+                return size;
+            }
+
+            public long end() {
+                return getLong(offsetsPosition + (long) size * Long.BYTES);
+            }
+
+            public T get(int entry) {
+                if (parsed == null) {
+                    return parse(entry);
+                }
+                T id = parsed.get(entry);
+                if (id == null) {
+                    id = parse(entry);
+                    parsed.set(entry, id);
+                }
+                return id;
+            }
+
+            public boolean matches(int entry, byte[] bytes) {
+                long from = getLong(offsetsPosition + (long) entry * Long.BYTES);
+                long to = getLong(offsetsPosition + (entry + 1L) * Long.BYTES);
+                if (to - from != bytes.length) {
+                    return false;
+                }
+                for (int b = 0; b < bytes.length; b++) {
+                    if (BinaryReader.this.get(from + b) != bytes[b]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            private T parse(int entry) {
+                long from = getLong(offsetsPosition + (long) entry * Long.BYTES);
+                byte[] bytes = new byte[(int) (getLong(offsetsPosition + (entry + 1L) * Long.BYTES) - from)];
+                for (int b = 0; b < bytes.length; b++) {
+                    bytes[b] = BinaryReader.this.get(from + b);
+                }
+                return parser.parse(new String(bytes, StandardCharsets.UTF_8));
+            }
+        }
+
+        private byte get(long position) {
+            return segments[(int) (position >>> segmentBits)].get((int) (position & segmentMask));
+        }
+
+        private int getInt(long position) {
+            int offset = (int) (position & segmentMask);
+            ByteBuffer segment = segments[(int) (position >>> segmentBits)];
+            if (offset + Integer.BYTES <= segment.limit()) {
+                return segment.getInt(offset);
+            }
+            int v = 0;
+            for (int b = 0; b < Integer.BYTES; b++) {
+                v = (v << 8) | (get(position + b) & 0xff);
+            }
+            return v;
+        }
+
+        private long getLong(long position) {
+            return ((long) getInt(position) << 32) | (getInt(position + Integer.BYTES) & 0xffffffffL);
+        }
+    }
+}
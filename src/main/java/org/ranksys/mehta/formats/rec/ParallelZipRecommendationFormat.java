@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.rec;
+
+import org.ranksys.core.Recommendation;
+import org.ranksys.core.util.tuples.Tuple2od;
+import org.ranksys.formats.parsing.Parser;
+import org.ranksys.formats.rec.RecommendationFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+
+/**
+ * Compressed recommendation format whose blocks are compressed and
+ * decompressed in parallel. Recommendations are serialized as one line per
+ * user, {@code user\titem\tscore\titem\tscore...} (without scores if they
+ * are ignored), and grouped in blocks of about {@value #BLOCK_BYTES} bytes
+ * that only contain whole users. Every block is deflated independently on
+ * a pool of threads and written in order as its compressed and raw lengths
+ * followed by the compressed bytes. A block index (offset, lengths and
+ * number of users of every block) and a trailer with its position close
+ * the file.
+ *
+ * The reader streams the blocks in order and keeps a window of them being
+ * inflated and parsed in parallel. At the end it checks the blocks it read
+ * against the index and the trailer, so that a truncated or corrupted file
+ * fails instead of silently losing users.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class ParallelZipRecommendationFormat<U, I> implements RecommendationFormat<U, I> {
+
+    private static final int MAGIC = 0x4d45485a;
+    private static final int VERSION = 1;
+    private static final int BLOCK_BYTES = 1 << 20;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Parser<U> up;
+    private final Parser<I> ip;
+    private final boolean ignoreScores;
+    private final int threads;
+
+    public ParallelZipRecommendationFormat(Parser<U> up, Parser<I> ip, boolean ignoreScores, int threads) {
+        this.up = up;
+        this.ip = ip;
+        this.ignoreScores = ignoreScores;
+        this.threads = threads;
+    }
+
+    @Override
+    public Writer<U, I> getWriter(OutputStream out) throws IOException {
+        return new ParallelZipWriter(out);
+    }
+
+    @Override
+    public Reader<U, I> getReader(InputStream in) throws IOException {
+        return new ParallelZipReader(in);
+    }
+
+    private static ExecutorService newPool(int threads, String name) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    private class ParallelZipWriter implements Writer<U, I> {
+
+        private final DataOutputStream out;
+        private final ExecutorService pool;
+        private final Deque<Future<byte[]>> pending;
+        private final List<long[]> index;
+        private ByteArrayOutputStream block;
+        private int blockUsers;
+        private long position;
+
+        public ParallelZipWriter(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+            this.pool = newPool(threads, "pzip-writer");
+            this.pending = new ArrayDeque<>();
+            this.index = new ArrayList<>();
+            this.block = new ByteArrayOutputStream(BLOCK_BYTES + BLOCK_BYTES / 4);
+            this.blockUsers = 0;
+
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            this.out.writeBoolean(ignoreScores);
+            this.position = 2 * Integer.BYTES + 1;
+        }
+
+        @Override
+        public void write(Recommendation<U, I> recommendation) throws IOException {
+            StringBuilder line = new StringBuilder();
+            line.append(recommendation.getUser());
+            for (Tuple2od<I> is : recommendation.getItems()) {
+                line.append('\t').append(is.v1);
+                if (!ignoreScores) {
+                    line.append('\t').append(is.v2);
+                }
+            }
+            line.append('\n');
+            block.write(line.toString().getBytes(StandardCharsets.UTF_8));
+            blockUsers++;
+
+            if (block.size() >= BLOCK_BYTES) {
+                submitBlock();
+            }
+        }
+
+        private void submitBlock() throws IOException {
+            byte[] raw = block.toByteArray();
+            int numUsers = blockUsers;
+            block.reset();
+            blockUsers = 0;
+
+            index.add(new long[]{0L, 0L, raw.length, numUsers});
+            pending.add(pool.submit(() -> deflate(raw)));
+            while (pending.size() > 2 * threads || (!pending.isEmpty() && pending.peek().isDone())) {
+                writeBlock();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            byte[] compressed = await(pending.poll());
+            long[] entry = index.get(index.size() - pending.size() - 1);
+            entry[0] = position;
+            entry[1] = compressed.length;
+
+            out.writeInt(compressed.length);
+            out.writeInt((int) entry[2]);
+            out.write(compressed);
+            position += 2 * Integer.BYTES + compressed.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (blockUsers > 0) {
+                    submitBlock();
+                }
+                while (!pending.isEmpty()) {
+                    writeBlock();
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+
+            long indexPosition = position;
+            out.writeInt(-1);
+            out.writeInt(index.size());
+            for (long[] entry : index) {
+                out.writeLong(entry[0]);
+                out.writeInt((int) entry[1]);
+                out.writeInt((int) entry[2]);
+                out.writeInt((int) entry[3]);
+            }
+            out.writeLong(indexPosition);
+            out.writeInt(MAGIC);
+            out.close();
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+            byte[] buffer = new byte[1 << 16];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                compressed.write(buffer, 0, n);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int n = 0;
+            while (n < rawLength) {
+                int m = inflater.inflate(raw, n, rawLength - n);
+                if (m == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("truncated block");
+                }
+                n += m;
+            }
+            return raw;
+        } catch (DataFormatException ex) {
+            throw new IOException(ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private class ParallelZipReader implements Reader<U, I> {
+
+        private final DataInputStream in;
+        private final boolean noScores;
+
+        public ParallelZipReader(InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+            if (this.in.readInt() != MAGIC || this.in.readInt() != VERSION) {
+                throw new IOException("not a parallel zip recommendation file");
+            }
+            this.noScores = this.in.readBoolean();
+        }
+
+        @Override
+        public Stream<Recommendation<U, I>> readAll() {
+            ExecutorService pool = newPool(threads, "pzip-reader");
+
+            Iterator<List<Recommendation<U, I>>> blocks = new Iterator<List<Recommendation<U, I>>>() {
+
+                private final Deque<Future<List<Recommendation<U, I>>>> pending = new ArrayDeque<>();
+                private final List<long[]> blocks = new ArrayList<>();
+                private long position = 2 * Integer.BYTES + 1;
+                private int consumed = 0;
+                private boolean eof = false;
+
+                private void fill() throws IOException {
+                    while (!eof && pending.size() < 2 * threads) {
+                        int compressedLength;
+                        try {
+                            compressedLength = in.readInt();
+                        } catch (EOFException ex) {
+                            throw new IOException("truncated file, no block index after " + blocks.size() + " blocks");
+                        }
+                        if (compressedLength < 0) {
+                            readIndex();
+                            eof = true;
+                            break;
+                        }
+                        int rawLength = in.readInt();
+                        byte[] compressed = new byte[compressedLength];
+                        in.readFully(compressed);
+                        blocks.add(new long[]{position, compressedLength, rawLength, -1, -1});
+                        position += 2 * Integer.BYTES + compressedLength;
+                        pending.add(pool.submit(() -> parse(inflate(compressed, rawLength))));
+                    }
+                }
+
+                private void readIndex() throws IOException {
+                    long indexPosition = position;
+                    int numBlocks = in.readInt();
+                    if (numBlocks != blocks.size()) {
+                        throw new IOException("index of " + numBlocks + " blocks, " + blocks.size() + " read");
+                    }
+                    for (long[] block : blocks) {
+                        if (in.readLong() != block[0] || in.readInt() != block[1] || in.readInt() != block[2]) {
+                            throw new IOException("block at " + block[0] + " does not match the index");
+                        }
+                        block[3] = in.readInt();
+                        checkUsers(block);
+                    }
+                    if (in.readLong() != indexPosition || in.readInt() != MAGIC || in.read() >= 0) {
+                        throw new IOException("invalid trailer");
+                    }
+                }
+
+                // users of a block in the index and parsed, checked when both are known
+                private void checkUsers(long[] block) throws IOException {
+                    if (block[3] >= 0 && block[4] >= 0 && block[3] != block[4]) {
+                        throw new IOException("block at " + block[0] + " has " + block[4] + " users, " + block[3] + " in the index");
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    try {
+                        fill();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    return !pending.isEmpty();
+                }
+
+                @Override
+                public List<Recommendation<U, I>> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    try {
+                        List<Recommendation<U, I>> recommendations = await(pending.poll());
+                        long[] block = blocks.get(consumed++);
+                        block[4] = recommendations.size();
+                        checkUsers(block);
+                        return recommendations;
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            };
+
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(blocks, Spliterator.ORDERED), false)
+                    .flatMap(List::stream)
+                    .onClose(() -> {
+                        pool.shutdownNow();
+                        try {
+                            in.close();
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    });
+        }
+
+        private List<Recommendation<U, I>> parse(byte[] raw) {
+            String text = new String(raw, StandardCharsets.UTF_8);
+            List<Recommendation<U, I>> recommendations = new ArrayList<>();
+
+            int start = 0;
+            while (start < text.length()) {
+                int end = text.indexOf('\n', start);
+                if (end < 0) {
+                    end = text.length();
+                }
+                String[] tokens = text.substring(start, end).split("\t", -1);
+                start = end + 1;
+
+                int width = noScores ? 1 : 2;
+                int length = (tokens.length - 1) / width;
+                List<Tuple2od<I>> items = length == 0 ? Collections.emptyList() : new ArrayList<>(length);
+                for (int j = 0; j < length; j++) {
+                    I item = ip.parse(tokens[1 + j * width]);
+                    double score = noScores ? length - j : Double.parseDouble(tokens[2 + j * width]);
+                    items.add(tuple(item, score));
+                }
+                recommendations.add(new Recommendation<>(up.parse(tokens[0]), items));
+            }
+
+            return recommendations;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.fm;
+
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+
+import java.util.SplittableRandom;
+
+/**
+ * Hogwild learner of factorization machines with the bayesian personalized
+ * ranking loss. Every step samples a training preference (u, i) and a
+ * negative item j not in the training items of u, and increases the margin
+ * between the predictions for (u, i) and (u, j).
+ *
+ * S. Rendle, C. Freudenthaler, Z. Gantner, L. Schmidt-Thieme. BPR: Bayesian
+ * personalized ranking from implicit feedback. UAI 2009.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class HogwildBPRLearner<U, I> extends HogwildFMLearner<U, I> {
+
+    private final double regW;
+    private final double regM;
+
+    public HogwildBPRLearner(double learnRate, int numIter, double regW, double regM, int threads, long seed, FastUserIndex<U> users, FastItemIndex<I> items) {
+        super(learnRate, numIter, threads, seed, users, items);
+        this.regW = regW;
+        this.regM = regM;
+    }
+
+    @Override
+    protected void update(Model model, double[] b, Training training, SplittableRandom random) {
+        int pref = random.nextInt(training.numPrefs);
+        int uidx = training.prefUsers[pref];
+        int jidx = training.sampleNegative(uidx, random);
+        if (jidx < 0) {
+            return;
+        }
+        int u = uidx;
+        int i = itemFeature(training.prefItems[pref]);
+        int j = itemFeature(jidx);
+
+        double[] mu = model.m[u];
+        double[] mi = model.m[i];
+        double[] mj = model.m[j];
+        int K = mu.length;
+
+        double x = model.w[i] - model.w[j];
+        for (int f = 0; f < K; f++) {
+            x += mu[f] * (mi[f] - mj[f]);
+        }
+        double sigma = 1.0 / (1.0 + Math.exp(x));
+
+        model.w[i] += learnRate * (sigma - regW * model.w[i]);
+        model.w[j] += learnRate * (-sigma - regW * model.w[j]);
+        for (int f = 0; f < K; f++) {
+            double muf = mu[f];
+            double mif = mi[f];
+            double mjf = mj[f];
+            mu[f] += learnRate * (sigma * (mif - mjf) - regM * muf);
+            mi[f] += learnRate * (sigma * muf - regM * mif);
+            mj[f] += learnRate * (-sigma * muf - regM * mjf);
+        }
+    }
+}
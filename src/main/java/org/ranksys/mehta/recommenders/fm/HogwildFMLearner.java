@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.fm;
+
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.core.preference.fast.IdxPref;
+import org.ranksys.javafm.FM;
+import org.ranksys.mehta.recommenders.validation.EarlyStopping;
+import org.ranksys.mehta.recommenders.validation.Validation;
+import org.ranksys.recommenders.fm.PreferenceFM;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Stochastic gradient descent learner of factorization machines for
+ * preference data in which several workers update the shared parameters
+ * without locks (Hogwild). Users and items are one-hot features, as in
+ * {@link PreferenceFM}: user {@code uidx} is feature {@code uidx} and item
+ * {@code iidx} is feature {@code numUsers + iidx}. Since training examples
+ * are sparse, concurrent updates rarely touch the same parameters. The
+ * exception is the global bias, which every example updates: each worker
+ * updates its own copy, and the changes are added up at the end of every
+ * epoch.
+ *
+ * F. Niu, B. Recht, C. Ré, S. J. Wright. Hogwild!: a lock-free approach to
+ * parallelizing stochastic gradient descent. NIPS 2011.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public abstract class HogwildFMLearner<U, I> {
+
+    private static final Logger LOG = Logger.getLogger(HogwildFMLearner.class.getName());
+
+    protected final double learnRate;
+    protected final int numIter;
+    protected final int threads;
+    protected final long seed;
+    protected final FastUserIndex<U> users;
+    protected final FastItemIndex<I> items;
+
+    public HogwildFMLearner(double learnRate, int numIter, int threads, long seed, FastUserIndex<U> users, FastItemIndex<I> items) {
+        this.learnRate = learnRate;
+        this.numIter = numIter;
+        this.threads = threads;
+        this.seed = seed;
+        this.users = users;
+        this.items = items;
+    }
+
+    public PreferenceFM<U, I> learn(FastPreferenceData<U, I> data, int K, double sdev) {
+        Training training = new Training(data);
+        Model model = init(K, sdev);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int epoch = 1; epoch <= numIter; epoch++) {
+                long t0 = System.nanoTime();
+                epoch(pool, model, training, epoch);
+                LOG.log(Level.INFO, "epoch {0}: {1} ms", new Object[]{epoch, (System.nanoTime() - t0) / 1_000_000});
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        return toFM(model);
+    }
+
+    /**
+     * Learns a factorization machine, stopping when the validation metric of
+     * the early stopping configuration stalls.
+     *
+     * @param K number of factors
+     * @param sdev standard deviation of the initial factors
+     * @param earlyStopping early stopping configuration, which also provides
+     * the training preferences
+     * @return best factorization machine on the validation preferences
+     */
+    public PreferenceFM<U, I> learn(int K, double sdev, EarlyStopping<U, I> earlyStopping) {
+        Training training = new Training(earlyStopping.getTrain());
+        Model model = init(K, sdev);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return earlyStopping.train(numIter, new EarlyStopping.Trainer<PreferenceFM<U, I>>() {
+
+                private int epoch = 0;
+
+                @Override
+                public void step(int numIter) {
+                    for (int e = 0; e < numIter; e++) {
+                        epoch(pool, model, training, ++epoch);
+                    }
+                }
+
+                @Override
+                public Validation.Scorer scorer() {
+                    return (uidx, iidx) -> {
+                        double[] mu = model.m[uidx];
+                        double[] mi = model.m[itemFeature(iidx)];
+                        double s = model.w[itemFeature(iidx)];
+                        for (int f = 0; f < mu.length; f++) {
+                            s += mu[f] * mi[f];
+                        }
+                        return s;
+                    };
+                }
+
+                @Override
+                public PreferenceFM<U, I> snapshot() {
+                    return toFM(model);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public Model init(int K, double sdev) {
+        int numFeatures = users.numUsers() + items.numItems();
+        Random random = new Random(seed);
+        double[][] m = new double[numFeatures][K];
+        for (double[] row : m) {
+            for (int k = 0; k < K; k++) {
+                row[k] = random.nextGaussian() * sdev;
+            }
+        }
+
+        return new Model(new double[1], new double[numFeatures], m);
+    }
+
+    /**
+     * Runs one epoch: each worker processes its share of the training
+     * examples, updating the model concurrently, and the changes of the
+     * workers to the global bias are merged at the end.
+     *
+     * @param pool thread pool of the workers
+     * @param model model, updated in place
+     * @param training training examples
+     * @param epoch epoch number, used to seed the workers
+     */
+    public void epoch(ForkJoinPool pool, Model model, Training training, int epoch) {
+        int perWorker = (training.numPrefs + threads - 1) / threads;
+        double b = model.b[0];
+        double delta = pool.submit(() -> IntStream.range(0, threads).parallel().mapToDouble(t -> {
+            SplittableRandom random = new SplittableRandom(seed * 1_000_003L + (long) epoch * threads + t);
+            double[] workerB = {b};
+            for (int s = 0; s < perWorker; s++) {
+                update(model, workerB, training, random);
+            }
+            return workerB[0] - b;
+        }).sum()).join();
+        model.b[0] = b + delta;
+    }
+
+    public PreferenceFM<U, I> toFM(Model model) {
+        double[][] m = new double[model.m.length][];
+        for (int f = 0; f < m.length; f++) {
+            m[f] = model.m[f].clone();
+        }
+
+        return new PreferenceFM<>(users, items, new FM(model.b[0], model.w.clone(), m));
+    }
+
+    /**
+     * Samples a training example and applies its gradient step.
+     *
+     * @param model model, shared with other workers
+     * @param b global bias of the worker, to be used and updated instead of
+     * the one of the model
+     * @param training training examples
+     * @param random random generator of the worker
+     */
+    protected abstract void update(Model model, double[] b, Training training, SplittableRandom random);
+
+    protected int itemFeature(int iidx) {
+        return users.numUsers() + iidx;
+    }
+
+    /**
+     * Parameters of a factorization machine: global bias, feature weights and
+     * feature factors. Weights and factors are updated in place by the
+     * workers, the global bias at the end of every epoch.
+     */
+    public static class Model {
+
+        public final double[] b;
+        public final double[] w;
+        public final double[][] m;
+
+        public Model(double[] b, double[] w, double[][] m) {
+            this.b = b;
+            this.w = w;
+            this.m = m;
+        }
+    }
+
+    /**
+     * Training preferences in compressed sparse row layout, with the items of
+     * every user sorted so that negative items can be checked by binary
+     * search and sampled from the complement.
+     */
+    public static class Training {
+
+        public final int numItems;
+        public final int numPrefs;
+        public final int[] prefUsers;
+        public final int[] prefItems;
+        public final double[] prefValues;
+        public final int[] offsets;
+
+        public Training(FastPreferenceData<?, ?> data) {
+            this.numItems = data.numItems();
+            this.offsets = new int[data.numUsers() + 1];
+            int total = data.numPreferences();
+            this.prefUsers = new int[total];
+            this.prefItems = new int[total];
+            this.prefValues = new double[total];
+
+            int j = 0;
+            for (int uidx = 0; uidx < data.numUsers(); uidx++) {
+                offsets[uidx] = j;
+                List<? extends IdxPref> prefs = data.getUidxPreferences(uidx)
+                        .sorted((p1, p2) -> Integer.compare(p1.v1, p2.v1))
+                        .collect(toList());
+                for (IdxPref pref : prefs) {
+                    prefUsers[j] = uidx;
+                    prefItems[j] = pref.v1;
+                    prefValues[j] = pref.v2;
+                    j++;
+                }
+            }
+            offsets[data.numUsers()] = j;
+            this.numPrefs = j;
+        }
+
+        public boolean contains(int uidx, int iidx) {
+            return Arrays.binarySearch(prefItems, offsets[uidx], offsets[uidx + 1], iidx) >= 0;
+        }
+
+        /**
+         * Samples uniformly an item not in the training items of a user.
+         *
+         * @param uidx user
+         * @param random random generator
+         * @return negative item, or -1 if the user has all the items
+         */
+        public int sampleNegative(int uidx, SplittableRandom random) {
+            int from = offsets[uidx];
+            int to = offsets[uidx + 1];
+            int numNegatives = numItems - (to - from);
+            if (numNegatives <= 0) {
+                return -1;
+            }
+
+            // the r-th negative item is r plus the number of positive items
+            // p_k, the k-th of the user, with p_k - k <= r
+            int r = random.nextInt(numNegatives);
+            int lo = from;
+            int hi = to;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (prefItems[mid] - (mid - from) <= r) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+
+            return r + (lo - from);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.fm;
+
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+
+import java.util.SplittableRandom;
+
+/**
+ * Hogwild learner of factorization machines with the squared error loss.
+ * Every step samples a training preference, which is fitted to its value,
+ * and on average {@code negativeProp} items not in the training items of
+ * its user, which are fitted to zero.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class HogwildRMSELearner<U, I> extends HogwildFMLearner<U, I> {
+
+    private final double regB;
+    private final double regW;
+    private final double regM;
+    private final double negativeProp;
+
+    public HogwildRMSELearner(double learnRate, int numIter, double regB, double regW, double regM, double negativeProp, int threads, long seed, FastUserIndex<U> users, FastItemIndex<I> items) {
+        super(learnRate, numIter, threads, seed, users, items);
+        this.regB = regB;
+        this.regW = regW;
+        this.regM = regM;
+        this.negativeProp = negativeProp;
+    }
+
+    @Override
+    protected void update(Model model, double[] b, Training training, SplittableRandom random) {
+        int pref = random.nextInt(training.numPrefs);
+        int uidx = training.prefUsers[pref];
+        fit(model, b, uidx, itemFeature(training.prefItems[pref]), training.prefValues[pref]);
+
+        int negatives = (int) negativeProp;
+        if (random.nextDouble() < negativeProp - negatives) {
+            negatives++;
+        }
+        for (int n = 0; n < negatives; n++) {
+            int iidx = training.sampleNegative(uidx, random);
+            if (iidx < 0) {
+                break;
+            }
+            fit(model, b, uidx, itemFeature(iidx), 0.0);
+        }
+    }
+
+    private void fit(Model model, double[] b, int u, int i, double y) {
+        double[] mu = model.m[u];
+        double[] mi = model.m[i];
+        int K = mu.length;
+
+        double prediction = b[0] + model.w[u] + model.w[i];
+        for (int f = 0; f < K; f++) {
+            prediction += mu[f] * mi[f];
+        }
+        double err = prediction - y;
+
+        b[0] -= learnRate * (err + regB * b[0]);
+        model.w[u] -= learnRate * (err + regW * model.w[u]);
+        model.w[i] -= learnRate * (err + regW * model.w[i]);
+        for (int f = 0; f < K; f++) {
+            double muf = mu[f];
+            double mif = mi[f];
+            mu[f] -= learnRate * (err * mif + regM * muf);
+            mi[f] -= learnRate * (err * muf + regM * mif);
+        }
+    }
+}
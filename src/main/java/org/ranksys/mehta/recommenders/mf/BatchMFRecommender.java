@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.mf;
+
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.recommenders.fast.FastRecommendation;
+import org.ranksys.recommenders.mf.Factorization;
+import org.ranksys.recommenders.mf.rec.MFRecommender;
+
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * Matrix factorization recommender that can also score blocks of users at
+ * once with a {@link BatchMFScorer}. Single-user requests are served by
+ * {@link MFRecommender}.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class BatchMFRecommender<U, I> extends MFRecommender<U, I> {
+
+    private final BatchMFScorer scorer;
+
+    public BatchMFRecommender(FastUserIndex<U> uIndex, FastItemIndex<I> iIndex, Factorization<U, I> factorization) {
+        super(uIndex, iIndex, factorization);
+        this.scorer = new BatchMFScorer(factorization);
+    }
+
+    public FastRecommendation[] getRecommendations(int[] uidxs, IntFunction<IntPredicate> filters, Consumer<IntPredicate> release, int maxLength) {
+        return scorer.score(uidxs, filters, release, maxLength);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.mf;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import org.ranksys.core.util.tuples.Tuple2id;
+import org.ranksys.recommenders.fast.FastRecommendation;
+import org.ranksys.recommenders.mf.Factorization;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+
+/**
+ * Scores blocks of users against all items of a factorization. Item factors
+ * are kept in a flat row-major array and visited in tiles that fit in the
+ * processor cache: every group of users scores a whole tile before moving to
+ * the next one, so that each tile is read from memory once per group. The
+ * best items of every user are kept in a primitive bounded heap. User
+ * factors are read from the factorization one group at a time, and so are
+ * the filters of the users, which are released when the group is done.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class BatchMFScorer {
+
+    private static final int TILE_BYTES = 1 << 18;
+    private static final int GROUP_SIZE = 32;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final int numItems;
+    private final int k;
+    private final DoubleMatrix2D userFactors;
+    private final double[] itemFactors;
+    private final int tileSize;
+
+    public BatchMFScorer(Factorization<?, ?> factorization) {
+        this.k = factorization.getK();
+        this.userFactors = factorization.getUserMatrix();
+        DoubleMatrix2D q = factorization.getItemMatrix();
+        this.numItems = q.rows();
+        long size = (long) numItems * k;
+        if (size > MAX_ARRAY_SIZE) {
+            throw new IllegalArgumentException(numItems + " items of " + k + " factors do not fit in an array");
+        }
+        // size fits in an int, and so does any offset iidx * k below
+        this.itemFactors = new double[(int) size];
+        for (int iidx = 0; iidx < numItems; iidx++) {
+            for (int f = 0; f < k; f++) {
+                itemFactors[iidx * k + f] = q.getQuick(iidx, f);
+            }
+        }
+        this.tileSize = Math.max(64, TILE_BYTES / (Double.BYTES * Math.max(1, k)));
+    }
+
+    /**
+     * Computes the top-n items of a block of users.
+     *
+     * @param uidxs user indices, -1 for unknown users
+     * @param filters item filter of the i-th user of the block
+     * @param release called with every filter once it is no longer used
+     * @param maxLength maximum length of the recommendations, 0 for all
+     * allowed items
+     * @return recommendation of each user, in the same order
+     */
+    public FastRecommendation[] score(int[] uidxs, IntFunction<IntPredicate> filters, Consumer<IntPredicate> release, int maxLength) {
+        int n = maxLength > 0 ? Math.min(maxLength, numItems) : numItems;
+        FastRecommendation[] recommendations = new FastRecommendation[uidxs.length];
+
+        int numGroups = (uidxs.length + GROUP_SIZE - 1) / GROUP_SIZE;
+        IntStream.range(0, numGroups).parallel().forEach(g -> {
+            int from = g * GROUP_SIZE;
+            int to = Math.min(from + GROUP_SIZE, uidxs.length);
+            TopN[] heaps = new TopN[to - from];
+            IntPredicate[] groupFilters = new IntPredicate[to - from];
+            double[] groupFactors = new double[(to - from) * k];
+            for (int u = from; u < to; u++) {
+                heaps[u - from] = new TopN(n);
+                if (uidxs[u] >= 0) {
+                    groupFilters[u - from] = filters.apply(u);
+                    for (int f = 0; f < k; f++) {
+                        groupFactors[(u - from) * k + f] = userFactors.getQuick(uidxs[u], f);
+                    }
+                }
+            }
+
+            for (int t0 = 0; t0 < numItems; t0 += tileSize) {
+                int t1 = Math.min(t0 + tileSize, numItems);
+                for (int u = from; u < to; u++) {
+                    if (uidxs[u] < 0) {
+                        continue;
+                    }
+                    int p = (u - from) * k;
+                    IntPredicate filter = groupFilters[u - from];
+                    TopN heap = heaps[u - from];
+                    for (int iidx = t0; iidx < t1; iidx++) {
+                        if (!filter.test(iidx)) {
+                            continue;
+                        }
+                        int offset = iidx * k;
+                        double s = 0.0;
+                        for (int f = 0; f < k; f++) {
+                            s += groupFactors[p + f] * itemFactors[offset + f];
+                        }
+                        heap.add(iidx, s);
+                    }
+                }
+            }
+
+            for (int u = from; u < to; u++) {
+                recommendations[u] = new FastRecommendation(uidxs[u], heaps[u - from].toList());
+                if (groupFilters[u - from] != null) {
+                    release.accept(groupFilters[u - from]);
+                }
+            }
+        });
+
+        return recommendations;
+    }
+
+    private static class TopN {
+
+        private final int capacity;
+        private final int[] ids;
+        private final double[] scores;
+        private int size;
+
+        public TopN(int capacity) {
+            this.capacity = capacity;
+            this.ids = new int[capacity];
+            this.scores = new double[capacity];
+            this.size = 0;
+        }
+
+        public void add(int id, double score) {
+            if (size < capacity) {
+                ids[size] = id;
+                scores[size] = score;
+                up(size++);
+            } else if (capacity > 0 && score > scores[0]) {
+                ids[0] = id;
+                scores[0] = score;
+                down(0);
+            }
+        }
+
+        public List<Tuple2id> toList() {
+            List<Tuple2id> list = new ArrayList<>(size);
+            while (size > 0) {
+                list.add(tuple(ids[0], scores[0]));
+                size--;
+                ids[0] = ids[size];
+                scores[0] = scores[size];
+                down(0);
+            }
+            Collections.reverse(list);
+
+            return list;
+        }
+
+        private void up(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= scores[i]) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void down(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int min = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+                if (scores[i] <= scores[min]) {
+                    break;
+                }
+                swap(i, min);
+                i = min;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            double score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.mf;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.core.preference.fast.IdxPref;
+import org.ranksys.recommenders.mf.Factorization;
+import org.ranksys.recommenders.mf.Factorizer;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Alternating least squares for implicit feedback in which the
+ * sub-problems of all users, and then of all items, are solved concurrently
+ * in a dedicated thread pool. Each worker thread copies the preferences of
+ * a sub-problem into its own scratch arrays, which are only reallocated
+ * when a larger sub-problem comes along, so that solving does not allocate
+ * per user or item.
+ *
+ * The preference of a user for an item with value {@code r} has confidence
+ * {@code confidence(r)}; missing preferences have confidence 1 and
+ * preference 0.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public abstract class ParallelALSFactorizer<U, I> extends Factorizer<U, I> {
+
+    private static final Logger LOG = Logger.getLogger(ParallelALSFactorizer.class.getName());
+
+    protected final double lambda;
+    protected final DoubleUnaryOperator confidence;
+    protected final int numIter;
+    protected final int threads;
+    protected final long seed;
+
+    public ParallelALSFactorizer(double lambda, DoubleUnaryOperator confidence, int numIter, int threads, long seed) {
+        this.lambda = lambda;
+        this.confidence = confidence;
+        this.numIter = numIter;
+        this.threads = threads;
+        this.seed = seed;
+    }
+
+    @Override
+    public Factorization<U, I> factorize(int K, FastPreferenceData<U, I> data) {
+        Random random = new Random(seed);
+        double scale = Math.sqrt(1.0 / K);
+        double[][] p = new double[data.numUsers()][K];
+        double[][] q = new double[data.numItems()][K];
+        for (double[][] m : new double[][][]{p, q}) {
+            for (double[] row : m) {
+                for (int k = 0; k < K; k++) {
+                    row[k] = scale * random.nextDouble();
+                }
+            }
+        }
+
+        iterate(p, q, data, numIter);
+
+        return new Factorization<>(data, data, new DenseDoubleMatrix2D(p), new DenseDoubleMatrix2D(q), K);
+    }
+
+    @Override
+    public void factorize(Factorization<U, I> factorization, FastPreferenceData<U, I> data) {
+        double[][] p = factorization.getUserMatrix().toArray();
+        double[][] q = factorization.getItemMatrix().toArray();
+
+        iterate(p, q, data, numIter);
+
+        copy(p, factorization.getUserMatrix());
+        copy(q, factorization.getItemMatrix());
+    }
+
+    /**
+     * Weighted squared loss of the implicit model plus the L2
+     * regularization of both factor matrices: every preference counts as a
+     * 1 with weight {@code confidence(r)} and every missing preference as a
+     * 0 with weight 1. The loss of the missing preferences is obtained from
+     * the Gram matrix of the item factors, so the cost is linear in the
+     * number of preferences.
+     *
+     * @param factorization factorization
+     * @param data preference data
+     * @return loss
+     */
+    @Override
+    public double error(Factorization<U, I> factorization, FastPreferenceData<U, I> data) {
+        DoubleMatrix2D p = factorization.getUserMatrix();
+        DoubleMatrix2D q = factorization.getItemMatrix();
+        int K = factorization.getK();
+
+        double[] gram = new double[K * K];
+        for (int j = 0; j < q.rows(); j++) {
+            for (int a = 0; a < K; a++) {
+                for (int b = 0; b <= a; b++) {
+                    gram[a * K + b] += q.getQuick(j, a) * q.getQuick(j, b);
+                }
+            }
+        }
+
+        return IntStream.range(0, p.rows()).parallel().mapToDouble(uidx -> {
+            double all = 0.0;
+            double reg = 0.0;
+            for (int a = 0; a < K; a++) {
+                double pa = p.getQuick(uidx, a);
+                reg += pa * pa;
+                all += gram[a * K + a] * pa * pa;
+                for (int b = 0; b < a; b++) {
+                    all += 2 * gram[a * K + b] * pa * p.getQuick(uidx, b);
+                }
+            }
+            double observed = data.getUidxPreferences(uidx).mapToDouble(pref -> {
+                double s = 0.0;
+                for (int a = 0; a < K; a++) {
+                    s += p.getQuick(uidx, a) * q.getQuick(pref.v1, a);
+                }
+                double c = confidence.applyAsDouble(pref.v2);
+                return c * (1 - s) * (1 - s) - s * s;
+            }).sum();
+            return all + observed + lambda * reg;
+        }).sum() + lambda * IntStream.range(0, q.rows()).mapToDouble(iidx -> {
+            double reg = 0.0;
+            for (int a = 0; a < K; a++) {
+                reg += q.getQuick(iidx, a) * q.getQuick(iidx, a);
+            }
+            return reg;
+        }).sum();
+    }
+
+    /**
+     * Runs iterations of alternating least squares over the factor matrices.
+     *
+     * @param p user factors, updated in place
+     * @param q item factors, updated in place
+     * @param data preference data
+     * @param iterations number of iterations
+     */
+    public void iterate(double[][] p, double[][] q, FastPreferenceData<U, I> data, int iterations) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int t = 1; t <= iterations; t++) {
+                long t0 = System.nanoTime();
+                update(pool, p, q, uidx -> data.getUidxPreferences(uidx));
+                update(pool, q, p, iidx -> data.getIidxPreferences(iidx));
+                LOG.log(Level.INFO, "iteration {0}: {1} ms", new Object[]{t, (System.nanoTime() - t0) / 1_000_000});
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void update(ForkJoinPool pool, double[][] x, double[][] y, IntFunction<Stream<? extends IdxPref>> prefs) {
+        int K = y.length > 0 ? y[0].length : x.length > 0 ? x[0].length : 0;
+        double[] gram = gram(pool, y, K);
+        ThreadLocal<Scratch> scratches = ThreadLocal.withInitial(Scratch::new);
+
+        pool.submit(() -> IntStream.range(0, x.length).parallel().forEach(idx -> {
+            Scratch scratch = scratches.get();
+            scratch.n = 0;
+            prefs.apply(idx).forEach(scratch);
+            scratch.ensureBuffer(scratchSize(K, scratch.n));
+            solve(x[idx], y, gram, scratch.idxs, scratch.values, scratch.n, K, scratch.buffer);
+        })).join();
+    }
+
+    /**
+     * Per-thread copy of the preferences of a sub-problem and buffer for
+     * the solver.
+     */
+    private static final class Scratch implements Consumer<IdxPref> {
+
+        private int[] idxs = new int[16];
+        private double[] values = new double[16];
+        private double[] buffer = new double[0];
+        private int n;
+
+        @Override
+        public void accept(IdxPref pref) {
+            if (n == idxs.length) {
+                idxs = Arrays.copyOf(idxs, 2 * n);
+                values = Arrays.copyOf(values, 2 * n);
+            }
+            idxs[n] = pref.v1;
+            values[n] = pref.v2;
+            n++;
+        }
+
+        private void ensureBuffer(int size) {
+            if (buffer.length < size) {
+                buffer = new double[Math.max(size, 2 * buffer.length)];
+            }
+        }
+    }
+
+    private static double[] gram(ForkJoinPool pool, double[][] y, int K) {
+        return pool.submit(() -> IntStream.range(0, y.length).parallel()
+                .collect(() -> new double[K * K], (g, j) -> {
+                    double[] row = y[j];
+                    for (int a = 0; a < K; a++) {
+                        for (int b = 0; b <= a; b++) {
+                            g[a * K + b] += row[a] * row[b];
+                        }
+                    }
+                }, (g1, g2) -> {
+                    for (int i = 0; i < g1.length; i++) {
+                        g1[i] += g2[i];
+                    }
+                })).join();
+    }
+
+    private static void copy(double[][] values, DoubleMatrix2D matrix) {
+        for (int i = 0; i < values.length; i++) {
+            for (int k = 0; k < values[i].length; k++) {
+                matrix.setQuick(i, k, values[i][k]);
+            }
+        }
+    }
+
+    /**
+     * Size of the per-thread scratch buffer for a given number of factors
+     * and preferences.
+     *
+     * @param K number of factors
+     * @param n number of preferences of the sub-problem
+     * @return number of doubles
+     */
+    protected abstract int scratchSize(int K, int n);
+
+    /**
+     * Solves the least-squares sub-problem of one user or item.
+     *
+     * @param x factors to be updated in place
+     * @param y factors of the other side
+     * @param gram lower triangle of the Gram matrix of y, row-major K x K
+     * @param idxs indices of the preferences of the user or item
+     * @param values values of the preferences of the user or item
+     * @param n number of preferences
+     * @param K number of factors
+     * @param scratch per-thread scratch buffer of at least
+     * {@link #scratchSize(int, int)} doubles
+     */
+    protected abstract void solve(double[] x, double[][] y, double[] gram, int[] idxs, double[] values, int n, int K, double[] scratch);
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.mf;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Parallel version of the implicit matrix factorization of Hu, Koren and
+ * Volinsky. Every sub-problem is solved exactly by Cholesky decomposition of
+ * {@code Y'Y + Y'(C - I)Y + lambda I}.
+ *
+ * Y. Hu, Y. Koren, C. Volinsky. Collaborative filtering for implicit
+ * feedback datasets. ICDM 2008.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class ParallelHKVFactorizer<U, I> extends ParallelALSFactorizer<U, I> {
+
+    public ParallelHKVFactorizer(double lambda, DoubleUnaryOperator confidence, int numIter, int threads, long seed) {
+        super(lambda, confidence, numIter, threads, seed);
+    }
+
+    @Override
+    protected int scratchSize(int K, int n) {
+        return K * K + K;
+    }
+
+    @Override
+    protected void solve(double[] x, double[][] y, double[] gram, int[] idxs, double[] values, int n, int K, double[] scratch) {
+        int bOffset = K * K;
+
+        for (int a = 0; a < K; a++) {
+            for (int c = 0; c <= a; c++) {
+                scratch[a * K + c] = gram[a * K + c];
+            }
+            scratch[a * K + a] += lambda;
+            scratch[bOffset + a] = 0.0;
+        }
+
+        for (int j = 0; j < n; j++) {
+            double[] row = y[idxs[j]];
+            double conf = confidence.applyAsDouble(values[j]);
+            for (int a = 0; a < K; a++) {
+                double w = (conf - 1) * row[a];
+                for (int c = 0; c <= a; c++) {
+                    scratch[a * K + c] += w * row[c];
+                }
+                scratch[bOffset + a] += conf * row[a];
+            }
+        }
+
+        // in-place Cholesky decomposition of the lower triangle
+        for (int a = 0; a < K; a++) {
+            for (int c = 0; c <= a; c++) {
+                double sum = scratch[a * K + c];
+                for (int j = 0; j < c; j++) {
+                    sum -= scratch[a * K + j] * scratch[c * K + j];
+                }
+                if (a == c) {
+                    scratch[a * K + a] = Math.sqrt(Math.max(sum, 1e-12));
+                } else {
+                    scratch[a * K + c] = sum / scratch[c * K + c];
+                }
+            }
+        }
+
+        // forward and backward substitution
+        for (int a = 0; a < K; a++) {
+            double sum = scratch[bOffset + a];
+            for (int j = 0; j < a; j++) {
+                sum -= scratch[a * K + j] * x[j];
+            }
+            x[a] = sum / scratch[a * K + a];
+        }
+        for (int a = K - 1; a >= 0; a--) {
+            double sum = x[a];
+            for (int j = a + 1; j < K; j++) {
+                sum -= scratch[j * K + a] * x[j];
+            }
+            x[a] = sum / scratch[a * K + a];
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.nn;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.core.util.tuples.Tuple2id;
+import org.ranksys.mehta.formats.preference.PreferenceDeltas;
+import org.ranksys.mehta.runner.OutputFiles;
+import org.ranksys.recommenders.nn.sim.Similarity;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+
+/**
+ * Item popularity and item-item co-occurrence counts of a preference data,
+ * from which the set-based cosine similarity is derived. Unlike the
+ * similarity itself, the counts can be updated with the user-item pairs of
+ * a delta in time proportional to the delta and the profiles of the users
+ * in it.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class CooccurrenceCounts {
+
+    private static final int MAGIC = 0x4d454843;
+    private static final int VERSION = 2;
+    private static final int MAX_FINGERPRINT_BYTES = 1 << 16;
+    private static final int BUFFER_SIZE = 1 << 23;
+
+    private final int[] counts;
+    private final Int2IntOpenHashMap[] cooccurrences;
+
+    private CooccurrenceCounts(int[] counts, Int2IntOpenHashMap[] cooccurrences) {
+        this.counts = counts;
+        this.cooccurrences = cooccurrences;
+    }
+
+    public static CooccurrenceCounts build(FastPreferenceData<?, ?> data) {
+        int[][] profiles = new int[data.numUsers()][];
+        IntStream.range(0, data.numUsers()).parallel()
+                .forEach(uidx -> profiles[uidx] = data.getUidxPreferences(uidx).mapToInt(pref -> pref.v1).toArray());
+
+        int[] counts = new int[data.numItems()];
+        Int2IntOpenHashMap[] cooccurrences = new Int2IntOpenHashMap[data.numItems()];
+        IntStream.range(0, data.numItems()).parallel().forEach(iidx -> {
+            Int2IntOpenHashMap row = new Int2IntOpenHashMap();
+            data.getIidxPreferences(iidx).forEach(pref -> {
+                for (int jidx : profiles[pref.v1]) {
+                    if (jidx != iidx) {
+                        row.addTo(jidx, 1);
+                    }
+                }
+            });
+            counts[iidx] = data.numUsers(iidx);
+            cooccurrences[iidx] = row;
+        });
+
+        return new CooccurrenceCounts(counts, cooccurrences);
+    }
+
+    /**
+     * Adds new user-item pairs to the counts.
+     *
+     * @param before preference data the counts were computed from
+     * @param added pairs that are not in {@code before}
+     */
+    public void update(FastPreferenceData<?, ?> before, PreferenceDeltas.Delta added) {
+        added.getUidxs().forEach(uidx -> {
+            int[] known = before.getUidxPreferences(uidx).mapToInt(pref -> pref.v1).toArray();
+            int[] iidxs = added.getIidxs(uidx);
+            for (int i = 0; i < iidxs.length; i++) {
+                int iidx = iidxs[i];
+                counts[iidx]++;
+                for (int jidx : known) {
+                    cooccurrences[iidx].addTo(jidx, 1);
+                    cooccurrences[jidx].addTo(iidx, 1);
+                }
+                for (int j = 0; j < i; j++) {
+                    cooccurrences[iidx].addTo(iidxs[j], 1);
+                    cooccurrences[iidxs[j]].addTo(iidx, 1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Estimated heap size of the counts: the popularity array plus the keys
+     * and values of every row, an open hash table with load factor 0.75.
+     *
+     * @return bytes
+     */
+    public long sizeInBytes() {
+        long bytes = (long) Integer.BYTES * counts.length;
+        for (Int2IntOpenHashMap row : cooccurrences) {
+            long capacity = Long.highestOneBit(Math.max(1L, (long) Math.ceil(row.size() / 0.75) - 1)) << 1;
+            bytes += 2L * Integer.BYTES * capacity + 64;
+        }
+        return bytes;
+    }
+
+    public int getCount(int iidx) {
+        return counts[iidx];
+    }
+
+    public int getCooccurrences(int iidx, int jidx) {
+        return cooccurrences[iidx].get(jidx);
+    }
+
+    /**
+     * Set-based cosine similarity, as {@code ItemSimilarities.setCosine}.
+     *
+     * @param alpha asymmetry of the cosine
+     * @return similarity between items
+     */
+    public Similarity similarity(double alpha) {
+        return new Similarity() {
+
+            private double norm(int iidx, int jidx) {
+                return Math.pow(counts[iidx], alpha) * Math.pow(counts[jidx], 1.0 - alpha);
+            }
+
+            @Override
+            public IntToDoubleFunction similarity(int iidx) {
+                return jidx -> similarity(iidx, jidx);
+            }
+
+            @Override
+            public double similarity(int iidx, int jidx) {
+                int c = cooccurrences[iidx].get(jidx);
+                return c == 0 ? 0.0 : c / norm(iidx, jidx);
+            }
+
+            @Override
+            public Stream<Tuple2id> similarElems(int iidx) {
+                Int2IntOpenHashMap row = cooccurrences[iidx];
+                List<Tuple2id> elems = new ArrayList<>(row.size());
+                IntIterator it = row.keySet().iterator();
+                while (it.hasNext()) {
+                    int jidx = it.nextInt();
+                    elems.add(tuple(jidx, row.get(jidx) / norm(iidx, jidx)));
+                }
+                return elems.stream();
+            }
+        };
+    }
+
+    public void write(Path file, String fingerprint) throws IOException {
+        OutputFiles.write(file, MAGIC, stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            byte[] fp = fingerprint.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(fp.length);
+            out.write(fp);
+
+            out.writeInt(counts.length);
+            for (int iidx = 0; iidx < counts.length; iidx++) {
+                Int2IntOpenHashMap row = cooccurrences[iidx];
+                out.writeInt(counts[iidx]);
+                out.writeInt(row.size());
+                IntIterator it = row.keySet().iterator();
+                while (it.hasNext()) {
+                    int jidx = it.nextInt();
+                    out.writeInt(jidx);
+                    out.writeInt(row.get(jidx));
+                }
+            }
+            out.flush();
+        });
+    }
+
+    /**
+     * Reads counts written by {@link #write(Path, String)}.
+     *
+     * @param file counts file
+     * @param fingerprint expected fingerprint of the preference data
+     * @param numItems expected number of items
+     * @return counts, or null if the file is stale or incomplete
+     * @throws IOException when the file cannot be read
+     */
+    public static CooccurrenceCounts read(Path file, String fingerprint, int numItems) throws IOException {
+        if (!OutputFiles.isComplete(file, MAGIC)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int fpLength = in.readInt();
+            if (fpLength < 0 || fpLength > MAX_FINGERPRINT_BYTES) {
+                return null;
+            }
+            byte[] fp = new byte[fpLength];
+            in.readFully(fp);
+            if (!fingerprint.equals(new String(fp, StandardCharsets.UTF_8)) || in.readInt() != numItems) {
+                return null;
+            }
+
+            int[] counts = new int[numItems];
+            Int2IntOpenHashMap[] cooccurrences = new Int2IntOpenHashMap[numItems];
+            for (int iidx = 0; iidx < numItems; iidx++) {
+                counts[iidx] = in.readInt();
+                int size = in.readInt();
+                Int2IntOpenHashMap row = new Int2IntOpenHashMap(size);
+                for (int k = 0; k < size; k++) {
+                    row.put(in.readInt(), in.readInt());
+                }
+                cooccurrences[iidx] = row;
+            }
+
+            return new CooccurrenceCounts(counts, cooccurrences);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.nn;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.ranksys.core.util.tuples.Tuple2id;
+import org.ranksys.recommenders.nn.neighborhood.Neighborhood;
+import org.ranksys.recommenders.nn.sim.Similarity;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+
+/**
+ * Approximate top-k neighborhood over sets using MinHash locality-sensitive
+ * hashing. Every set is summarized by {@code bands * rows} min-hashes; two
+ * sets become candidate neighbors when all the min-hashes of at least one
+ * band coincide, which happens with probability
+ * {@code 1 - (1 - J^rows)^bands} for Jaccard similarity {@code J}. More bands
+ * or fewer rows increase recall at the cost of more candidates.
+ *
+ * Every band contributes at most {@code maxCandidates} candidates, read from
+ * a position of its bucket that depends on the query, so that large buckets
+ * are not always sampled from their first sets. When the bands give more
+ * than {@code maxCandidates} candidates, those that collide with the query in
+ * the most bands are kept.
+ *
+ * Candidates are scored with the given similarity or, if none is given, with
+ * the Jaccard similarity estimated from the min-hashes. Signatures and
+ * band indices are built in parallel; neighbors are computed on demand.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class MinHashNeighborhood implements Neighborhood {
+
+    private final int n;
+    private final Similarity similarity;
+    private final int bands;
+    private final int rows;
+    private final int k;
+    private final int maxCandidates;
+    private final long[] hashSeeds;
+    private final int[][] signatures;
+    private final long[][] buckets;
+
+    /**
+     * Constructor.
+     *
+     * @param n number of sets
+     * @param elements elements of each set
+     * @param similarity similarity to score candidates, or null to use the
+     * estimated Jaccard similarity
+     * @param bands number of bands
+     * @param rows number of min-hashes per band
+     * @param k maximum number of neighbors
+     * @param maxCandidates maximum number of candidates scored per query
+     * @param seed seed of the hash functions
+     */
+    public MinHashNeighborhood(int n, IntFunction<IntStream> elements, Similarity similarity, int bands, int rows, int k, int maxCandidates, long seed) {
+        this.n = n;
+        this.similarity = similarity;
+        this.bands = bands;
+        this.rows = rows;
+        this.k = k;
+        this.maxCandidates = maxCandidates;
+
+        this.hashSeeds = new long[bands * rows];
+        long s = seed;
+        for (int h = 0; h < hashSeeds.length; h++) {
+            s += 0x9e3779b97f4a7c15L;
+            hashSeeds[h] = mix(s);
+        }
+
+        this.signatures = new int[n][];
+        IntStream.range(0, n).parallel().forEach(idx -> signatures[idx] = signature(elements.apply(idx)));
+
+        this.buckets = new long[bands][];
+        IntStream.range(0, bands).parallel().forEach(b -> {
+            long[] bucket = IntStream.range(0, n)
+                    .filter(idx -> signatures[idx] != null)
+                    .mapToLong(idx -> ((long) bandKey(signatures[idx], b) << 32) | idx)
+                    .toArray();
+            Arrays.sort(bucket);
+            buckets[b] = bucket;
+        });
+    }
+
+    @Override
+    public Stream<Tuple2id> getNeighbors(int idx) {
+        if (idx < 0 || idx >= n || signatures[idx] == null) {
+            return Stream.empty();
+        }
+
+        Int2IntOpenHashMap collisions = new Int2IntOpenHashMap();
+        for (int b = 0; b < bands; b++) {
+            long[] bucket = buckets[b];
+            int key = bandKey(signatures[idx], b);
+            int from = lowerBound(bucket, (long) key << 32);
+            int size = lowerBound(bucket, ((long) key << 32) | Integer.MAX_VALUE) - from;
+            // one more, as the query itself is in the bucket
+            int take = Math.min(size, maxCandidates + 1);
+            int start = take < size ? (int) Long.remainderUnsigned(mix(hashSeeds[b] ^ idx), size) : 0;
+            for (int j = 0; j < take; j++) {
+                int other = (int) bucket[from + (start + j) % size];
+                if (other != idx) {
+                    collisions.addTo(other, 1);
+                }
+            }
+        }
+
+        int[] candidates = new int[collisions.size()];
+        IntIterator it = collisions.keySet().iterator();
+        for (int c = 0; c < candidates.length; c++) {
+            candidates[c] = it.nextInt();
+        }
+        if (candidates.length > maxCandidates) {
+            candidates = IntStream.of(candidates).boxed()
+                    .sorted(Comparator.comparingInt((Integer other) -> -collisions.get(other)).thenComparingInt(other -> other))
+                    .limit(maxCandidates)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+
+        Tuple2id[] scored = new Tuple2id[candidates.length];
+        int m = 0;
+        for (int other : candidates) {
+            double v = similarity != null ? similarity.similarity(idx, other) : estimate(signatures[idx], signatures[other]);
+            if (v > 0) {
+                scored[m++] = tuple(other, v);
+            }
+        }
+
+        return Arrays.stream(scored, 0, m)
+                .sorted(Comparator.comparingDouble((Tuple2id t) -> t.v2).reversed())
+                .limit(k);
+    }
+
+    private int[] signature(IntStream elements) {
+        int[] signature = new int[hashSeeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        boolean[] empty = {true};
+        elements.forEach(e -> {
+            empty[0] = false;
+            for (int h = 0; h < hashSeeds.length; h++) {
+                int v = (int) (mix(hashSeeds[h] ^ e) >>> 33);
+                if (v < signature[h]) {
+                    signature[h] = v;
+                }
+            }
+        });
+
+        return empty[0] ? null : signature;
+    }
+
+    private int bandKey(int[] signature, int b) {
+        long h = b;
+        for (int r = 0; r < rows; r++) {
+            h = mix(h * 31 + signature[b * rows + r]);
+        }
+
+        return (int) h;
+    }
+
+    private static double estimate(int[] s1, int[] s2) {
+        int equal = 0;
+        for (int h = 0; h < s1.length; h++) {
+            if (s1[h] == s2[h]) {
+                equal++;
+            }
+        }
+
+        return equal / (double) s1.length;
+    }
+
+    private static int lowerBound(long[] a, long key) {
+        int lo = 0;
+        int hi = a.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return lo;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.validation;
+
+import org.ranksys.core.preference.fast.FastPreferenceData;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Early stopping of iterative training. The model is evaluated on the
+ * validation preferences every {@code evalEvery} iterations, and training
+ * stops when the validation metric has not improved for {@code patience}
+ * evaluations in a row, or when the maximum number of iterations is reached;
+ * the last step is shortened so that it is never exceeded. The best snapshot
+ * seen is returned, or the last model if the validation metric was never a
+ * number.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class EarlyStopping<U, I> {
+
+    private static final Logger LOG = Logger.getLogger(EarlyStopping.class.getName());
+
+    private final FastPreferenceData<U, I> train;
+    private final Validation validation;
+    private final int evalEvery;
+    private final int patience;
+
+    public EarlyStopping(FastPreferenceData<U, I> train, Validation validation, int evalEvery, int patience) {
+        this.train = train;
+        this.validation = validation;
+        this.evalEvery = evalEvery;
+        this.patience = patience;
+    }
+
+    /**
+     * Training preferences, without the held-out validation preferences.
+     *
+     * @return training preferences
+     */
+    public FastPreferenceData<U, I> getTrain() {
+        return train;
+    }
+
+    public int getEvalEvery() {
+        return evalEvery;
+    }
+
+    public <M> M train(int maxIter, Trainer<M> trainer) {
+        if (maxIter <= 0) {
+            throw new IllegalArgumentException("early stopping needs at least one iteration, got " + maxIter);
+        }
+
+        M best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        int bestIter = 0;
+        int stalled = 0;
+
+        for (int iter = 0; iter < maxIter;) {
+            int numIter = Math.min(evalEvery, maxIter - iter);
+            iter += numIter;
+
+            long t0 = System.nanoTime();
+            trainer.step(numIter);
+            long t1 = System.nanoTime();
+            double value = validation.auc(trainer.scorer());
+            long t2 = System.nanoTime();
+
+            LOG.log(Level.INFO, "iteration {0}: training {1} ms, validation AUC {2} ({3} ms)",
+                    new Object[]{iter, (t1 - t0) / 1_000_000, value, (t2 - t1) / 1_000_000});
+            double error = trainer.error();
+            if (!Double.isNaN(error)) {
+                LOG.log(Level.INFO, "iteration {0}: training error {1}", new Object[]{iter, error});
+            }
+            if (Double.isNaN(value)) {
+                LOG.log(Level.WARNING, "iteration {0}: validation AUC is not a number", iter);
+            }
+
+            if (value > bestValue) {
+                bestValue = value;
+                bestIter = iter;
+                best = trainer.snapshot();
+                stalled = 0;
+            } else if (++stalled >= patience) {
+                break;
+            }
+        }
+
+        if (best == null) {
+            LOG.log(Level.WARNING, "validation AUC was never a number, keeping the last model");
+            return trainer.snapshot();
+        }
+
+        LOG.log(Level.INFO, "best validation AUC {0} at iteration {1}", new Object[]{bestValue, bestIter});
+
+        return best;
+    }
+
+    /**
+     * Model being trained by steps of at most {@code evalEvery} iterations.
+     *
+     * @param <M> type of the model
+     */
+    public interface Trainer<M> {
+
+        void step(int numIter);
+
+        Validation.Scorer scorer();
+
+        M snapshot();
+
+        /**
+         * Error of the model on the training preferences, logged at every
+         * evaluation.
+         *
+         * @return training error, NaN if not available
+         */
+        default double error() {
+            return Double.NaN;
+        }
+    }
+}
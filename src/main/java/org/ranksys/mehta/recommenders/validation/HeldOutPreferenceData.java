@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.validation;
+
+import org.ranksys.core.preference.fast.AbstractFastPreferenceData;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.core.preference.fast.IdxPref;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * View of preference data without a set of held-out user-item pairs. The
+ * held-out items of every user are given as sorted index arrays, and
+ * preferences are filtered on the fly: nothing but the number of remaining
+ * preferences of every user and item is computed up front.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class HeldOutPreferenceData<U, I> extends AbstractFastPreferenceData<U, I> {
+
+    private final FastPreferenceData<U, I> data;
+    private final int[][] heldOut;
+    private final int[] userCounts;
+    private final int[] itemCounts;
+    private final int numPreferences;
+    private final int numUsersWithPreferences;
+    private final int numItemsWithPreferences;
+
+    /**
+     * Constructor.
+     *
+     * @param data preferences
+     * @param heldOut sorted held-out items of every user, null or empty if
+     * none; pairs that are not in the preferences are ignored
+     */
+    public HeldOutPreferenceData(FastPreferenceData<U, I> data, int[][] heldOut) {
+        super(data, data);
+        this.data = data;
+        this.heldOut = heldOut;
+        this.userCounts = new int[data.numUsers()];
+        this.itemCounts = new int[data.numItems()];
+
+        int removed = 0;
+        for (int uidx = 0; uidx < userCounts.length; uidx++) {
+            userCounts[uidx] = data.numItems(uidx);
+        }
+        for (int iidx = 0; iidx < itemCounts.length; iidx++) {
+            itemCounts[iidx] = data.numUsers(iidx);
+        }
+        for (int uidx = 0; uidx < heldOut.length; uidx++) {
+            if (heldOut[uidx] == null || heldOut[uidx].length == 0) {
+                continue;
+            }
+            int[] userHeldOut = heldOut[uidx];
+            int[] iidxs = data.getUidxPreferences(uidx)
+                    .mapToInt(pref -> pref.v1)
+                    .filter(iidx -> Arrays.binarySearch(userHeldOut, iidx) >= 0)
+                    .toArray();
+            for (int iidx : iidxs) {
+                userCounts[uidx]--;
+                itemCounts[iidx]--;
+            }
+            removed += iidxs.length;
+        }
+
+        this.numPreferences = data.numPreferences() - removed;
+        this.numUsersWithPreferences = (int) Arrays.stream(userCounts).filter(n -> n > 0).count();
+        this.numItemsWithPreferences = (int) Arrays.stream(itemCounts).filter(n -> n > 0).count();
+    }
+
+    private boolean isHeldOut(int uidx, int iidx) {
+        return uidx < heldOut.length && heldOut[uidx] != null && Arrays.binarySearch(heldOut[uidx], iidx) >= 0;
+    }
+
+    @Override
+    public int numUsers(int iidx) {
+        return itemCounts[iidx];
+    }
+
+    @Override
+    public int numItems(int uidx) {
+        return userCounts[uidx];
+    }
+
+    @Override
+    public int numPreferences() {
+        return numPreferences;
+    }
+
+    @Override
+    public int numUsersWithPreferences() {
+        return numUsersWithPreferences;
+    }
+
+    @Override
+    public int numItemsWithPreferences() {
+        return numItemsWithPreferences;
+    }
+
+    @Override
+    public IntStream getUidxWithPreferences() {
+        return IntStream.range(0, userCounts.length).filter(uidx -> userCounts[uidx] > 0);
+    }
+
+    @Override
+    public IntStream getIidxWithPreferences() {
+        return IntStream.range(0, itemCounts.length).filter(iidx -> itemCounts[iidx] > 0);
+    }
+
+    @Override
+    public Stream<? extends IdxPref> getUidxPreferences(int uidx) {
+        if (uidx >= heldOut.length || heldOut[uidx] == null || heldOut[uidx].length == 0) {
+            return data.getUidxPreferences(uidx);
+        }
+        return data.getUidxPreferences(uidx).filter(pref -> !isHeldOut(uidx, pref.v1));
+    }
+
+    @Override
+    public Stream<? extends IdxPref> getIidxPreferences(int iidx) {
+        if (itemCounts[iidx] == data.numUsers(iidx)) {
+            return data.getIidxPreferences(iidx);
+        }
+        return data.getIidxPreferences(iidx).filter(pref -> !isHeldOut(pref.v1, iidx));
+    }
+
+    @Override
+    public boolean useIteratorsPreferentially() {
+        return false;
+    }
+}
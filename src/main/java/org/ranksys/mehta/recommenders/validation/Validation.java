@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.validation;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Held-out preferences used to monitor training. The metric is a sampled
+ * AUC: for a fixed sample of users, every validation item is compared with
+ * randomly drawn items the user has no preference for. Samples are drawn
+ * with the same seeds at every evaluation, so that successive values are
+ * comparable.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class Validation {
+
+    private final int numItems;
+    private final int[][] positives;
+    private final int[][] known;
+    private final int[] evalUsers;
+    private final int negatives;
+    private final long seed;
+
+    /**
+     * Constructor.
+     *
+     * @param numItems number of items
+     * @param positives sorted validation items of every user, null if none
+     * @param known sorted items of every user that cannot be drawn as
+     * negatives, null if none
+     * @param maxUsers maximum number of users to evaluate
+     * @param negatives number of negative items per validation item
+     * @param seed seed of the samples
+     */
+    public Validation(int numItems, int[][] positives, int[][] known, int maxUsers, int negatives, long seed) {
+        this.numItems = numItems;
+        this.positives = positives;
+        this.known = known;
+        this.negatives = negatives;
+        this.seed = seed;
+
+        int[] candidates = IntStream.range(0, positives.length)
+                .filter(uidx -> positives[uidx] != null && positives[uidx].length > 0)
+                .toArray();
+        Random random = new Random(seed);
+        for (int i = candidates.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = candidates[i];
+            candidates[i] = candidates[j];
+            candidates[j] = tmp;
+        }
+        this.evalUsers = Arrays.copyOf(candidates, Math.min(maxUsers, candidates.length));
+    }
+
+    public int numUsers() {
+        return evalUsers.length;
+    }
+
+    public double auc(Scorer scorer) {
+        return IntStream.range(0, evalUsers.length).parallel()
+                .mapToDouble(u -> {
+                    int uidx = evalUsers[u];
+                    SplittableRandom random = new SplittableRandom(seed * 31 + uidx);
+                    double correct = 0.0;
+                    int pairs = 0;
+                    for (int iidx : positives[uidx]) {
+                        double s = scorer.score(uidx, iidx);
+                        for (int n = 0; n < negatives; n++) {
+                            double sn = scorer.score(uidx, sampleNegative(uidx, random));
+                            correct += s > sn ? 1.0 : s == sn ? 0.5 : 0.0;
+                            pairs++;
+                        }
+                    }
+                    return pairs == 0 ? 0.0 : correct / pairs;
+                })
+                .average()
+                .orElse(0.0);
+    }
+
+    private int sampleNegative(int uidx, SplittableRandom random) {
+        int iidx;
+        int tries = 0;
+        do {
+            iidx = random.nextInt(numItems);
+        } while (isKnown(uidx, iidx) && ++tries < 100);
+
+        return iidx;
+    }
+
+    private boolean isKnown(int uidx, int iidx) {
+        return (known[uidx] != null && Arrays.binarySearch(known[uidx], iidx) >= 0)
+                || Arrays.binarySearch(positives[uidx], iidx) >= 0;
+    }
+
+    /**
+     * Score of an item for a user according to the model being trained.
+     */
+    @FunctionalInterface
+    public interface Scorer {
+
+        double score(int uidx, int iidx);
+    }
+}
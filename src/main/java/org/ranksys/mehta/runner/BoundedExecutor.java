@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.runner;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a task for every element of an iterator with at most a given number
+ * of them in progress, so that the elements are only read as the tasks can
+ * take them. The first failure, exception or error, stops reading more
+ * elements and is rethrown once the tasks in progress have finished.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class BoundedExecutor {
+
+    private static final Logger LOG = Logger.getLogger(BoundedExecutor.class.getName());
+
+    private BoundedExecutor() {
+    }
+
+    /**
+     * Runs the tasks.
+     *
+     * @param <T> type of the elements
+     * @param concurrency maximum number of tasks in progress
+     * @param elements elements to process
+     * @param names name of an element, for logging failures
+     * @param task task to run on every element
+     * @throws Exception the first failure of a task
+     */
+    public static <T> void execute(int concurrency, Iterator<T> elements, Function<T, String> names, Task<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        Semaphore slots = new Semaphore(concurrency);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        try {
+            while (elements.hasNext() && failure.get() == null) {
+                T element = elements.next();
+                slots.acquire();
+                executor.submit(() -> {
+                    try {
+                        task.run(element);
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                        LOG.log(Level.SEVERE, names.apply(element) + " failed", ex);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+
+        Throwable ex = failure.get();
+        if (ex instanceof Error) {
+            throw (Error) ex;
+        }
+        if (ex != null) {
+            throw (Exception) ex;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Task<T> {
+
+        void run(T element) throws Exception;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.runner;
+
+import org.jooq.lambda.Unchecked;
+import org.ranksys.core.Recommendation;
+import org.ranksys.formats.rec.RecommendationFormat;
+import org.ranksys.formats.rec.RecommendationFormat.Writer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Recommendation writer that checkpoints its output in segments of a fixed
+ * number of users. Segments are written to a {@code .segments} directory
+ * next to the output file and each one is committed atomically once full,
+ * so an interrupted run loses at most one segment. A new writer for the
+ * same file continues after the committed segments, and
+ * {@link #getWrittenUsers()} tells which users can be skipped.
+ * {@link #commit()} assembles the segments into the output file.
+ *
+ * Segments are only continued by a run with the same manifest, a
+ * description of everything that determines the output (parameters,
+ * training data, shard...) that is stored with them. Segments of a run
+ * with a different manifest are discarded.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class CheckpointWriter<U, I> implements Writer<U, I> {
+
+    private final Path file;
+    private final Path segmentsDir;
+    private final Path manifestFile;
+    private final RecommendationFormat<U, I> format;
+    private final int segmentUsers;
+    private int nextSegment;
+    private Writer<U, I> current;
+    private int currentUsers;
+    private boolean failed;
+
+    /**
+     * Constructor.
+     *
+     * @param file output file
+     * @param format recommendation format of the segments and the output
+     * @param segmentUsers number of users per segment
+     * @param manifest description of the run, or null to never continue
+     * previous segments
+     * @throws IOException when the segments cannot be listed or discarded
+     */
+    public CheckpointWriter(Path file, RecommendationFormat<U, I> format, int segmentUsers, String manifest) throws IOException {
+        this.file = file;
+        this.segmentsDir = file.resolveSibling(file.getFileName() + ".segments");
+        this.manifestFile = segmentsDir.resolve("manifest");
+        this.format = format;
+        this.segmentUsers = segmentUsers;
+        this.current = null;
+        this.currentUsers = 0;
+        this.failed = false;
+
+        Files.createDirectories(segmentsDir);
+        try (Stream<Path> files = Files.list(segmentsDir)) {
+            for (Path tmpFile : files.filter(f -> f.getFileName().toString().endsWith(".tmp")).collect(toList())) {
+                Files.delete(tmpFile);
+            }
+        }
+        if (manifest == null || !Files.exists(manifestFile)
+                || !new String(Files.readAllBytes(manifestFile), StandardCharsets.UTF_8).equals(manifest)) {
+            for (Path segment : getSegments()) {
+                Files.delete(segment);
+            }
+            Files.deleteIfExists(manifestFile);
+            if (manifest != null) {
+                OutputFiles.write(manifestFile, out -> out.write(manifest.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        this.nextSegment = getSegments().size();
+    }
+
+    public Set<U> getWrittenUsers() throws IOException {
+        Set<U> users = new HashSet<>();
+        for (Path segment : getSegments()) {
+            try (Stream<Recommendation<U, I>> recommendations = format.getReader(segment).readAll()) {
+                recommendations.forEach(recommendation -> users.add(recommendation.getUser()));
+            }
+        }
+        return users;
+    }
+
+    @Override
+    public void write(Recommendation<U, I> recommendation) throws IOException {
+        try {
+            if (current == null) {
+                current = format.getWriter(OutputFiles.getTmpFile(getSegment(nextSegment)));
+            }
+            current.write(recommendation);
+        } catch (IOException | RuntimeException ex) {
+            failed = true;
+            throw ex;
+        }
+
+        currentUsers++;
+        if (currentUsers >= segmentUsers) {
+            closeSegment();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current == null) {
+            return;
+        }
+        if (failed) {
+            current.close();
+            Files.deleteIfExists(OutputFiles.getTmpFile(getSegment(nextSegment)));
+            current = null;
+        } else {
+            closeSegment();
+        }
+    }
+
+    /**
+     * Concatenates the committed segments into the output file, commits it
+     * and removes the segments.
+     *
+     * @throws IOException when the segments cannot be read or the output
+     * written
+     */
+    public void commit() throws IOException {
+        close();
+
+        List<Path> segments = getSegments();
+        try (Writer<U, I> writer = format.getWriter(OutputFiles.getTmpFile(file))) {
+            for (Path segment : segments) {
+                try (Stream<Recommendation<U, I>> recommendations = format.getReader(segment).readAll()) {
+                    recommendations.forEach(Unchecked.consumer(writer::write));
+                }
+            }
+        }
+        OutputFiles.commit(file);
+
+        for (Path segment : segments) {
+            Files.delete(segment);
+        }
+        Files.deleteIfExists(manifestFile);
+        Files.delete(segmentsDir);
+    }
+
+    private void closeSegment() throws IOException {
+        current.close();
+        Path segment = getSegment(nextSegment);
+        Files.move(OutputFiles.getTmpFile(segment), segment, REPLACE_EXISTING, ATOMIC_MOVE);
+        nextSegment++;
+        current = null;
+        currentUsers = 0;
+    }
+
+    private Path getSegment(int i) {
+        return segmentsDir.resolve(String.format("%06d", i));
+    }
+
+    private List<Path> getSegments() throws IOException {
+        try (Stream<Path> files = Files.list(segmentsDir)) {
+            return files
+                    .filter(f -> f.getFileName().toString().matches("\\d+"))
+                    .sorted()
+                    .collect(toList());
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.runner;
+
+import org.ranksys.core.Recommendation;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.util.tuples.Tuple2od;
+import org.ranksys.evaluation.runner.RecommenderRunner;
+import org.ranksys.formats.rec.RecommendationFormat.Writer;
+import org.ranksys.mehta.factories.CompiledFilter;
+import org.ranksys.mehta.recommenders.mf.BatchMFRecommender;
+import org.ranksys.mehta.stats.RunStatistics;
+import org.ranksys.recommenders.Recommender;
+import org.ranksys.recommenders.fast.FastRecommendation;
+import org.ranksys.recommenders.fast.FastRecommender;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+
+/**
+ * Recommender runner for fast recommenders with per-user filters. Target
+ * users are processed in blocks: the recommendations of a block are computed
+ * in parallel and then written in order, so that the output is deterministic
+ * and the memory held does not depend on the number of users. Scoring and
+ * writing times and per-user latencies are reported to the
+ * {@link RunStatistics} of the calling thread, if any.
+ *
+ * Blocks for a {@link BatchMFRecommender} are scored at once with its batch
+ * scorer. Their users have no latency of their own: the time of the block
+ * is recorded as a block latency instead.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class MehtaRecommenderRunner<U, I> implements RecommenderRunner<U, I> {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    private final FastUserIndex<U> userIndex;
+    private final FastItemIndex<I> itemIndex;
+    private final List<U> users;
+    private final Function<U, IntPredicate> userFilter;
+    private final int maxLength;
+
+    public MehtaRecommenderRunner(FastUserIndex<U> userIndex, FastItemIndex<I> itemIndex, Stream<U> users, Function<U, IntPredicate> userFilter, int maxLength) {
+        this.userIndex = userIndex;
+        this.itemIndex = itemIndex;
+        this.users = users.collect(toList());
+        this.userFilter = userFilter;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Runner for the target users that are not in a set, for instance
+     * those already written by an interrupted run.
+     *
+     * @param done users to skip
+     * @return runner for the remaining users
+     */
+    public MehtaRecommenderRunner<U, I> without(Set<U> done) {
+        return new MehtaRecommenderRunner<>(userIndex, itemIndex, users.stream().filter(user -> !done.contains(user)), userFilter, maxLength);
+    }
+
+    @Override
+    public void run(Recommender<U, I> recommender, Writer<U, I> writer) throws IOException {
+        FastRecommender<U, I> fastRecommender = (FastRecommender<U, I>) recommender;
+        RunStatistics stats = RunStatistics.current();
+
+        for (int from = 0; from < users.size(); from += BLOCK_SIZE) {
+            List<U> block = users.subList(from, Math.min(from + BLOCK_SIZE, users.size()));
+
+            long t0 = System.nanoTime();
+            List<Recommendation<U, I>> recommendations;
+            if (recommender instanceof BatchMFRecommender) {
+                recommendations = recommendBatch((BatchMFRecommender<U, I>) recommender, block);
+                if (stats != null) {
+                    stats.recordBlock(System.nanoTime() - t0, block.size());
+                }
+            } else {
+                recommendations = block.parallelStream()
+                        .map(user -> recommend(fastRecommender, user, stats))
+                        .collect(toList());
+            }
+            long t1 = System.nanoTime();
+            for (Recommendation<U, I> recommendation : recommendations) {
+                writer.write(recommendation);
+            }
+            long t2 = System.nanoTime();
+
+            if (stats != null) {
+                stats.addStage("scoring", t1 - t0);
+                stats.addStage("writing", t2 - t1);
+            }
+        }
+    }
+
+    private Recommendation<U, I> recommend(FastRecommender<U, I> recommender, U user, RunStatistics stats) {
+        long t0 = System.nanoTime();
+        IntPredicate filter = userFilter.apply(user);
+        FastRecommendation rec = recommender.getRecommendation(userIndex.user2uidx(user), maxLength, filter);
+        CompiledFilter.release(filter);
+        Recommendation<U, I> recommendation = toRecommendation(user, rec);
+        if (stats != null) {
+            stats.recordUser(System.nanoTime() - t0);
+        }
+
+        return recommendation;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Recommendation<U, I>> recommendBatch(BatchMFRecommender<U, I> recommender, List<U> block) {
+        int[] uidxs = block.stream()
+                .mapToInt(userIndex::user2uidx)
+                .toArray();
+        FastRecommendation[] recs = recommender.getRecommendations(uidxs, i -> userFilter.apply(block.get(i)), CompiledFilter::release, maxLength);
+
+        return IntStream.range(0, block.size())
+                .mapToObj(i -> toRecommendation(block.get(i), recs[i]))
+                .collect(toList());
+    }
+
+    private Recommendation<U, I> toRecommendation(U user, FastRecommendation rec) {
+        List<Tuple2od<I>> items = rec.getIidxs().stream()
+                .map(iv -> tuple(itemIndex.iidx2item(iv.v1), iv.v2))
+                .collect(toList());
+
+        return new Recommendation<>(user, items);
+    }
+}
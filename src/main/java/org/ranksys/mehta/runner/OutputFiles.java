@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.runner;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Crash-safe commit of output files. An output file is written as a
+ * temporary sibling, moved in place atomically once complete and then
+ * marked with an empty {@code .done} file. A file without its marker may
+ * come from an older, interrupted run and is not considered complete.
+ *
+ * Files shared by concurrent processes, such as snapshots and models, are
+ * written with {@link #write(Path, int, Content)} instead: every writer
+ * uses its own uniquely named temporary file, and a trailer with the length
+ * of the file lets readers reject truncated copies.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class OutputFiles {
+
+    public static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+
+    private OutputFiles() {
+    }
+
+    public static Path getTmpFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    public static Path getDoneFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".done");
+    }
+
+    public static boolean isDone(Path file) {
+        return Files.exists(file) && Files.exists(getDoneFile(file));
+    }
+
+    /**
+     * Moves the temporary file of an output in place and marks it as done.
+     *
+     * @param file output file
+     * @throws IOException when the file cannot be moved or marked
+     */
+    public static void commit(Path file) throws IOException {
+        Files.deleteIfExists(getDoneFile(file));
+        Files.move(getTmpFile(file), file, REPLACE_EXISTING, ATOMIC_MOVE);
+        Files.createFile(getDoneFile(file));
+    }
+
+    /**
+     * Creates an empty temporary sibling of a file with a unique name.
+     *
+     * @param file file that will be replaced by the temporary file
+     * @return temporary file
+     * @throws IOException when the file cannot be created
+     */
+    public static Path createTmpFile(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        return Files.createTempFile(dir, file.getFileName() + ".", ".tmp");
+    }
+
+    /**
+     * Writes a file through a uniquely named temporary sibling that replaces
+     * it atomically once complete.
+     *
+     * @param file file to write
+     * @param content content of the file
+     * @throws IOException when the file cannot be written
+     */
+    public static void write(Path file, Content content) throws IOException {
+        write(file, content, null);
+    }
+
+    /**
+     * Writes a file through a uniquely named temporary sibling followed by a
+     * trailer with its length and a magic number, and replaces the file
+     * atomically once complete.
+     *
+     * @param file file to write
+     * @param magic magic number of the format
+     * @param content content of the file
+     * @throws IOException when the file cannot be written
+     */
+    public static void write(Path file, int magic, Content content) throws IOException {
+        write(file, content, magic);
+    }
+
+    private static void write(Path file, Content content, Integer magic) throws IOException {
+        Path tmpFile = createTmpFile(file);
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmpFile), 1 << 20)) {
+                content.write(out);
+            }
+            if (magic != null) {
+                long length = Files.size(tmpFile);
+                try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmpFile, APPEND))) {
+                    out.writeLong(length);
+                    out.writeInt(magic);
+                }
+            }
+            Files.move(tmpFile, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Checks that a file written by {@link #write(Path, int, Content)} is
+     * complete.
+     *
+     * @param file file to check
+     * @param magic magic number of the format
+     * @return true if the file exists and its trailer matches its length
+     * @throws IOException when the file cannot be read
+     */
+    public static boolean isComplete(Path file, int magic) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            long size = channel.size();
+            if (size < TRAILER_BYTES) {
+                return false;
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer, size - TRAILER_BYTES + trailer.position()) < 0) {
+                    return false;
+                }
+            }
+            return trailer.getLong(0) == size - TRAILER_BYTES && trailer.getInt(Long.BYTES) == magic;
+        }
+    }
+
+    /**
+     * Content of a file.
+     */
+    @FunctionalInterface
+    public interface Content {
+
+        void write(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.runner;
+
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One of N deterministic partitions of the target users, given as
+ * {@code i/N} with {@code 0 <= i < N}. Users are assigned by a hash of
+ * their id, so every worker computes the same partition without
+ * coordination. The whole set of users is the shard {@code 0/1}.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class Shard {
+
+    private static final Pattern PART_FILE = Pattern.compile("\\.part-(\\d+)-of-(\\d+)$");
+
+    private final int index;
+    private final int count;
+
+    public Shard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("invalid shard " + index + "/" + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    public static Shard parse(String shard) {
+        String[] tokens = shard.trim().split("/");
+        if (tokens.length != 2) {
+            throw new IllegalArgumentException("invalid shard " + shard + ", expected i/N");
+        }
+        return new Shard(Integer.parseInt(tokens[0]), Integer.parseInt(tokens[1]));
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isWhole() {
+        return count == 1;
+    }
+
+    public boolean contains(Object user) {
+        return count == 1 || Math.floorMod(mix(user.toString().hashCode()), count) == index;
+    }
+
+    /**
+     * Part file of this shard for an output file.
+     *
+     * @param file output file
+     * @return the file itself for the whole set of users, a sibling file
+     * with a {@code .part-i-of-N} suffix otherwise
+     */
+    public Path getPartFile(Path file) {
+        return isWhole() ? file : file.resolveSibling(file.getFileName() + getSuffix());
+    }
+
+    public String getSuffix() {
+        return isWhole() ? "" : ".part-" + index + "-of-" + count;
+    }
+
+    /**
+     * Shard of a part file.
+     *
+     * @param partFile part file
+     * @return shard, or null if the file name has no part suffix
+     */
+    public static Shard ofPartFile(Path partFile) {
+        Matcher matcher = PART_FILE.matcher(partFile.getFileName().toString());
+        if (!matcher.find()) {
+            return null;
+        }
+        return new Shard(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.stats;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of latencies in nanoseconds. Buckets are log-linear,
+ * with 32 sub-buckets per power of two, so percentiles are reported with a
+ * relative error below 1/32, rounded up to the upper bound of their bucket.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final LongAdder[] counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    public LatencyHistogram() {
+        this.counts = new LongAdder[Long.SIZE * SUB_BUCKETS];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0L);
+    }
+
+    public void record(long nanos) {
+        long v = Math.max(0L, nanos);
+        counts[bucket(v)].increment();
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : sum.sum() / (double) n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getPercentile(double p) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0L;
+        }
+        long target = Math.max(1L, (long) Math.ceil(p * n));
+        long cumulative = 0;
+        for (int b = 0; b < counts.length; b++) {
+            cumulative += counts[b].sum();
+            if (cumulative >= target) {
+                return Math.min(upperBound(b), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    private static int bucket(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) ((v >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exp << SUB_BUCKET_BITS) + sub;
+    }
+
+    private static long upperBound(int b) {
+        if (b < SUB_BUCKETS) {
+            return b;
+        }
+        int exp = b >>> SUB_BUCKET_BITS;
+        int sub = b & (SUB_BUCKETS - 1);
+        return ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.stats;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Statistics of the generation of one recommendation file: exclusive time
+ * spent in each stage, per-user recommendation latencies and heap
+ * high-water mark. The statistics of the recommender being built are bound
+ * to the building thread, so that factories can report their stages through
+ * {@link #time(String, Stage)} without knowing which recommender they are
+ * working for.
+ *
+ * Users scored in blocks, as batch scorers do, have no latency of their own:
+ * they are counted as users, but only the latency of their blocks is
+ * recorded, separately from the per-user latencies.
+ *
+ * The heap high-water mark is the maximum heap usage sampled every
+ * {@value #SAMPLE_MILLIS} ms during the run, and at its start and end. Runs
+ * are sampled independently, so concurrent runs do not disturb each other's
+ * peaks, but the heap is shared: the peak of a run includes the memory used
+ * by the runs that overlap with it.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class RunStatistics {
+
+    private static final ThreadLocal<RunStatistics> CURRENT = new ThreadLocal<>();
+    private static final long SAMPLE_MILLIS = 100;
+    private static final Set<RunStatistics> RUNNING = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "heap-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        SAMPLER.scheduleAtFixedRate(() -> {
+            long used = getHeapUsed();
+            RUNNING.forEach(stats -> stats.sampleMemory(used));
+        }, SAMPLE_MILLIS, SAMPLE_MILLIS, MILLISECONDS);
+    }
+
+    private final String name;
+    private final long start;
+    private final Map<String, Long> stages;
+    private final Deque<long[]> frames;
+    private final LatencyHistogram latency;
+    private final LatencyHistogram blockLatency;
+    private final AtomicLong numUsers;
+    private final AtomicLong peakMemory;
+    private long end;
+
+    private RunStatistics(String name) {
+        this.name = name;
+        this.start = System.nanoTime();
+        this.stages = new LinkedHashMap<>();
+        this.frames = new ArrayDeque<>();
+        this.latency = new LatencyHistogram();
+        this.blockLatency = new LatencyHistogram();
+        this.numUsers = new AtomicLong();
+        this.peakMemory = new AtomicLong();
+        this.end = -1;
+    }
+
+    public static RunStatistics start(String name) {
+        RunStatistics stats = new RunStatistics(name);
+        stats.sampleMemory(getHeapUsed());
+        RUNNING.add(stats);
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    private static long getHeapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private void sampleMemory(long used) {
+        peakMemory.accumulateAndGet(used, Math::max);
+    }
+
+    public static RunStatistics current() {
+        return CURRENT.get();
+    }
+
+    public static <T, E extends Exception> T time(String stage, Stage<T, E> supplier) throws E {
+        RunStatistics stats = CURRENT.get();
+        if (stats == null) {
+            return supplier.get();
+        }
+
+        stats.frames.push(new long[]{0L});
+        long t0 = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            long elapsed = System.nanoTime() - t0;
+            long nested = stats.frames.pop()[0];
+            if (!stats.frames.isEmpty()) {
+                stats.frames.peek()[0] += elapsed;
+            }
+            stats.addStage(stage, elapsed - nested);
+        }
+    }
+
+    public synchronized void addStage(String stage, long nanos) {
+        stages.merge(stage, nanos, Long::sum);
+    }
+
+    public void recordUser(long nanos) {
+        latency.record(nanos);
+        numUsers.incrementAndGet();
+    }
+
+    public void recordBlock(long nanos, int users) {
+        blockLatency.record(nanos);
+        numUsers.addAndGet(users);
+    }
+
+    public long getNumUsers() {
+        return numUsers.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public void finish() {
+        if (end >= 0) {
+            return;
+        }
+        end = System.nanoTime();
+        RUNNING.remove(this);
+        sampleMemory(getHeapUsed());
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    public double getUsersPerSecond() {
+        long scoring = stages.getOrDefault("scoring", 0L);
+        return scoring == 0 ? 0.0 : getNumUsers() / (scoring / 1e9);
+    }
+
+    public synchronized void write(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("recommender\t" + name);
+            out.println("total.ms\t" + (end - start) / 1_000_000);
+            stages.forEach((stage, nanos) -> out.println("stage." + stage + ".ms\t" + nanos / 1_000_000));
+            out.println("users\t" + getNumUsers());
+            out.println("users.per.second\t" + getUsersPerSecond());
+            out.println("latency.mean.us\t" + latency.getMean() / 1_000);
+            out.println("latency.p50.us\t" + latency.getPercentile(0.50) / 1_000);
+            out.println("latency.p90.us\t" + latency.getPercentile(0.90) / 1_000);
+            out.println("latency.p99.us\t" + latency.getPercentile(0.99) / 1_000);
+            out.println("latency.p999.us\t" + latency.getPercentile(0.999) / 1_000);
+            out.println("latency.max.us\t" + latency.getMax() / 1_000);
+            if (blockLatency.getCount() > 0) {
+                out.println("blocks\t" + blockLatency.getCount());
+                out.println("block.latency.mean.us\t" + blockLatency.getMean() / 1_000);
+                out.println("block.latency.p99.us\t" + blockLatency.getPercentile(0.99) / 1_000);
+                out.println("block.latency.max.us\t" + blockLatency.getMax() / 1_000);
+            }
+            out.println("memory.peak.mb\t" + peakMemory.get() / (1024 * 1024));
+        }
+    }
+
+    @FunctionalInterface
+    public interface Stage<T, E extends Exception> {
+
+        T get() throws E;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.config;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class SharedDataTest {
+
+    @Test
+    public void testReleaseOnlyUnusedEntries() throws IOException {
+        SharedData shared = new SharedData();
+        SharedData a = shared.forOwner("a");
+        SharedData b = shared.forOwner("b");
+
+        Object users = a.get("users", key -> new Object());
+        a.get("preferences a", key -> new Object());
+        assertSame(users, b.get("users", key -> new Object()));
+        b.get("preferences b", key -> new Object());
+        assertEquals(3, shared.size());
+
+        assertEquals(1, shared.release("a", key -> false));
+        assertEquals(2, shared.size());
+        assertSame(users, b.get("users", key -> new Object()));
+
+        assertEquals(1, shared.release("b", key -> key.equals("users")));
+        assertEquals(1, shared.size());
+        assertSame(users, a.get("users", key -> new Object()));
+
+        assertEquals(1, shared.release("a", key -> false));
+        assertEquals(0, shared.size());
+        assertNotSame(users, b.get("users", key -> new Object()));
+    }
+
+    @Test
+    public void testConcurrentLoadsOfSameKey() throws Exception {
+        SharedData shared = new SharedData();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                SharedData view = shared.forOwner("owner" + t);
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return view.get("preferences", key -> {
+                        loads.incrementAndGet();
+                        Thread.sleep(100);
+                        return new Object();
+                    });
+                }));
+            }
+            start.countDown();
+
+            Object preferences = futures.get(0).get();
+            for (Future<Object> future : futures) {
+                assertSame(preferences, future.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testNestedLoads() throws IOException {
+        SharedData shared = new SharedData();
+
+        Object users = new Object();
+        Object preferences = shared.get("preferences", key -> shared.get("users", k -> users));
+
+        assertSame(users, preferences);
+        assertSame(users, shared.get("users", key -> new Object()));
+    }
+
+    @Test
+    public void testFailedLoadIsRetried() throws IOException {
+        SharedData shared = new SharedData();
+
+        try {
+            shared.get("users", key -> {
+                throw new IOException("missing file");
+            });
+            fail("failed load returned a value");
+        } catch (IOException ex) {
+            assertEquals("missing file", ex.getMessage());
+        }
+        assertEquals(0, shared.size());
+
+        Object users = new Object();
+        assertSame(users, shared.get("users", key -> users));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRecursiveLoadOfSameKeyFails() throws IOException {
+        SharedData shared = new SharedData();
+        shared.get("users", key -> shared.get("users", k -> new Object()));
+    }
+}
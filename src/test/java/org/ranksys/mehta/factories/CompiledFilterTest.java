@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.factories;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.index.fast.SimpleFastItemIndex;
+import org.ranksys.core.index.fast.SimpleFastUserIndex;
+import org.ranksys.core.preference.fast.SimpleFastPreferenceData;
+
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class CompiledFilterTest {
+
+    private CompiledFilter filter;
+
+    @Before
+    public void setUp() {
+        FastUserIndex<String> users = SimpleFastUserIndex.load(Stream.of("u0", "u1"));
+        FastItemIndex<String> items = SimpleFastItemIndex.load(IntStream.range(0, 6).mapToObj(i -> "i" + i));
+        BitSet allowed = new BitSet(6);
+        allowed.set(0, 5);
+
+        filter = new CompiledFilter(users, allowed, SimpleFastPreferenceData.load(Stream.of(
+                tuple("u0", "i0", 1.0), tuple("u0", "i1", 1.0),
+                tuple("u1", "i2", 1.0), tuple("u1", "i3", 1.0)), users, items));
+    }
+
+    @Test
+    public void testPredicatesOwnTheirState() {
+        IntPredicate u0 = filter.apply("u0");
+        IntPredicate u1 = filter.apply("u1");
+
+        assertArrayEquals(new int[]{2, 3, 4}, allowed(u0));
+        assertArrayEquals(new int[]{0, 1, 4}, allowed(u1));
+    }
+
+    @Test
+    public void testReleasedBitmapsAreCleared() {
+        IntPredicate u0 = filter.apply("u0");
+        CompiledFilter.release(u0);
+        CompiledFilter.release(u0);
+
+        assertArrayEquals(new int[]{0, 1, 4}, allowed(filter.apply("u1")));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, allowed(filter.apply("unknown")));
+    }
+
+    private static int[] allowed(IntPredicate predicate) {
+        return IntStream.range(0, 6).filter(predicate).toArray();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.factories;
+
+import org.junit.Test;
+import org.ranksys.mehta.config.MehtaParameters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class ComponentCacheTest {
+
+    private final MehtaParameters params = new MehtaParameters("test", "component", Collections.singletonMap("k", "10"));
+
+    @Test
+    public void testReuse() {
+        ComponentCache cache = new ComponentCache(10, 100);
+        AtomicInteger created = new AtomicInteger();
+
+        Optional<Object> first = cache.get("kind", params, p -> Optional.of(created.incrementAndGet()), v -> 8L);
+        Optional<Object> second = cache.get("kind", params, p -> Optional.of(created.incrementAndGet()), v -> 8L);
+
+        assertSame(first.get(), second.get());
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void testFailurePropagatesToWaiters() throws Exception {
+        ComponentCache cache = new ComponentCache(10, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Optional<Object>> owner = pool.submit(() -> cache.get("kind", params, p -> {
+                started.countDown();
+                try {
+                    fail.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new OutOfMemoryError("test");
+            }, v -> 8L));
+            started.await();
+            Future<Optional<Object>> waiter = pool.submit(() -> cache.get("kind", params, p -> Optional.of("unexpected"), v -> 8L));
+            Thread.sleep(100);
+            fail.countDown();
+
+            assertThrowsError(owner);
+            assertThrowsError(waiter);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Optional<Object> retried = cache.get("kind", params, p -> Optional.of("retried"), v -> 8L);
+        assertEquals("retried", retried.get());
+    }
+
+    @Test
+    public void testWeightAfterConcurrentEvictions() throws Exception {
+        long mb = 1024 * 1024;
+        ComponentCache cache = new ComponentCache(100, 4);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                futures.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int n = 0; n < 2000; n++) {
+                        MehtaParameters p = new MehtaParameters("test", "component", Collections.singletonMap("k", Integer.toString(random.nextInt(20))));
+                        cache.get("kind", p, x -> Optional.of(x.toString()), v -> mb);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(cache.size() <= 4);
+        assertEquals(cache.size() * mb, cache.getWeight());
+    }
+
+    private static void assertThrowsError(Future<?> future) throws InterruptedException {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("failure not propagated");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof OutOfMemoryError);
+        } catch (TimeoutException ex) {
+            fail("waiter hangs");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.neighborhood;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ranksys.core.util.tuples.Tuple2id;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class CsrNeighborhoodTest {
+
+    private Path file;
+    private List<Tuple2id>[] neighbors;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws IOException {
+        file = Files.createTempFile("neighborhood", ".csr");
+        Files.delete(file);
+
+        Random random = new Random(42);
+        neighbors = new List[200];
+        for (int idx = 0; idx < neighbors.length; idx++) {
+            neighbors[idx] = random.ints(0, neighbors.length).distinct().limit(random.nextInt(30))
+                    .mapToObj(id -> tuple(id, (double) random.nextFloat()))
+                    .collect(toList());
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        assertFalse(CsrNeighborhood.isValid(file));
+        CsrNeighborhood.write(file, idx -> neighbors[idx].stream(), neighbors.length);
+        assertTrue(CsrNeighborhood.isValid(file));
+
+        CsrNeighborhood mapped = CsrNeighborhood.map(file);
+        assertEquals(neighbors.length, mapped.size());
+        assertEquals(Stream.of(neighbors).mapToLong(List::size).sum(), mapped.numNeighbors());
+        for (int idx = 0; idx < neighbors.length; idx++) {
+            assertEquals(toString(neighbors[idx].stream()), toString(mapped.getNeighbors(idx)));
+        }
+        assertEquals(0, mapped.getNeighbors(neighbors.length).count());
+    }
+
+    @Test
+    public void testRoundTripSeveralChunks() throws IOException {
+        int n = 10_000;
+        CsrNeighborhood.write(file, idx -> IntStream.range(0, idx % 4).mapToObj(j -> tuple((idx + j) % n, 1.0 / (j + 1))), n);
+
+        CsrNeighborhood mapped = CsrNeighborhood.map(file);
+        assertEquals(n, mapped.size());
+        for (int idx = 0; idx < n; idx++) {
+            int i = idx;
+            assertEquals(toString(IntStream.range(0, idx % 4).mapToObj(j -> tuple((i + j) % n, 1.0 / (j + 1)))), toString(mapped.getNeighbors(idx)));
+        }
+    }
+
+    @Test
+    public void testTruncatedFileIsNotMapped() throws IOException {
+        CsrNeighborhood.write(file, idx -> neighbors[idx].stream(), neighbors.length);
+        try (FileChannel channel = FileChannel.open(file, WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        assertFalse(CsrNeighborhood.isValid(file));
+        try {
+            CsrNeighborhood.map(file);
+            fail("truncated neighborhood was mapped");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    private static List<String> toString(Stream<Tuple2id> neighbors) {
+        return neighbors.map(n -> n.v1 + ":" + (float) n.v2).collect(toList());
+    }
+}
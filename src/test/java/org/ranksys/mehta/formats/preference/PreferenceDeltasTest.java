@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.preference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.index.fast.SimpleFastItemIndex;
+import org.ranksys.core.index.fast.SimpleFastUserIndex;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.core.preference.fast.SimpleFastPreferenceData;
+import org.ranksys.mehta.formats.preference.PreferenceDeltas.MergePolicy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class PreferenceDeltasTest {
+
+    private Path dir;
+    private Path preferencesFile;
+    private Path usersFile;
+    private Path itemsFile;
+    private Path deltaFile;
+    private FastUserIndex<String> users;
+    private FastItemIndex<String> items;
+    private FastPreferenceData<String, String> base;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("deltas");
+        preferencesFile = Files.write(dir.resolve("train.data"), "base".getBytes());
+        usersFile = Files.write(dir.resolve("users.txt"), "users".getBytes());
+        itemsFile = Files.write(dir.resolve("items.txt"), "items".getBytes());
+        deltaFile = Files.write(dir.resolve("delta1.data"), Arrays.asList(
+                "u0\ti1\t5.0",
+                "u0\ti2\t1.0",
+                "u0\ti2\t2.0",
+                "u2\ti0\t3.0",
+                "unknown\ti0\t1.0"));
+
+        users = SimpleFastUserIndex.load(Stream.of("u0", "u1", "u2"));
+        items = SimpleFastItemIndex.load(IntStream.range(0, 3).mapToObj(i -> "i" + i));
+        base = SimpleFastPreferenceData.load(Stream.of(
+                tuple("u0", "i0", 1.0), tuple("u0", "i1", 2.0),
+                tuple("u1", "i1", 4.0)), users, items);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted((p1, p2) -> p2.compareTo(p1)).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testReplace() throws IOException {
+        FastPreferenceData<String, String> data = deltas(MergePolicy.REPLACE).apply(base, 0, users, items);
+
+        assertEquals(5, data.numPreferences());
+        assertEquals(3, data.numUsersWithPreferences());
+        assertEquals(3, data.numItemsWithPreferences());
+        assertEquals("0:1.0,1:5.0,2:2.0", byUser(data, 0));
+        assertEquals("1:4.0", byUser(data, 1));
+        assertEquals("0:3.0", byUser(data, 2));
+        assertEquals("0:1.0,2:3.0", byItem(data, 0));
+        assertEquals("0:5.0,1:4.0", byItem(data, 1));
+        assertEquals("0:2.0", byItem(data, 2));
+        assertEquals(3, data.numItems(0));
+        assertEquals(2, data.numUsers(0));
+    }
+
+    @Test
+    public void testSum() throws IOException {
+        FastPreferenceData<String, String> data = deltas(MergePolicy.SUM).apply(base, 0, users, items);
+
+        assertEquals(5, data.numPreferences());
+        assertEquals("0:1.0,1:7.0,2:3.0", byUser(data, 0));
+        assertEquals("0:7.0,1:4.0", byItem(data, 1));
+    }
+
+    @Test
+    public void testSnapshotOfTheOverlay() throws IOException {
+        PreferenceDeltas deltas = deltas(MergePolicy.REPLACE);
+        FastPreferenceData<String, String> data = deltas.apply(base, 0, users, items);
+        deltas.getSnapshot(1).write(data);
+
+        FastPreferenceData<String, String> mapped = deltas.getSnapshot(1).read(users, items);
+        for (int uidx = 0; uidx < users.numUsers(); uidx++) {
+            assertEquals(byUser(data, uidx), byUser(mapped, uidx));
+        }
+        assertEquals(-1, deltas(MergePolicy.SUM).getLastSnapshot());
+    }
+
+    private PreferenceDeltas deltas(MergePolicy policy) {
+        return new PreferenceDeltas(preferencesFile, usersFile, itemsFile, Arrays.asList(deltaFile), policy);
+    }
+
+    private static String byUser(FastPreferenceData<String, String> data, int uidx) {
+        return data.getUidxPreferences(uidx)
+                .sorted((p1, p2) -> Integer.compare(p1.v1, p2.v1))
+                .map(p -> p.v1 + ":" + p.v2)
+                .collect(joining(","));
+    }
+
+    private static String byItem(FastPreferenceData<String, String> data, int iidx) {
+        return data.getIidxPreferences(iidx)
+                .sorted((p1, p2) -> Integer.compare(p1.v1, p2.v1))
+                .map(p -> p.v1 + ":" + p.v2)
+                .collect(joining(","));
+    }
+}
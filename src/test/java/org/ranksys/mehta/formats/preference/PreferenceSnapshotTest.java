@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.preference;
+
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.jooq.lambda.tuple.Tuple3;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.index.fast.SimpleFastItemIndex;
+import org.ranksys.core.index.fast.SimpleFastUserIndex;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.core.preference.fast.SimpleFastPreferenceData;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class PreferenceSnapshotTest {
+
+    private Path dir;
+    private Path preferencesFile;
+    private Path usersFile;
+    private Path itemsFile;
+    private FastUserIndex<String> users;
+    private FastItemIndex<String> items;
+    private FastPreferenceData<String, String> data;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("snapshot");
+        preferencesFile = Files.write(dir.resolve("train.data"), "source".getBytes());
+        usersFile = Files.write(dir.resolve("users.txt"), "users".getBytes());
+        itemsFile = Files.write(dir.resolve("items.txt"), "items".getBytes());
+
+        users = SimpleFastUserIndex.load(IntStream.range(0, 50).mapToObj(u -> "u" + u));
+        items = SimpleFastItemIndex.load(IntStream.range(0, 30).mapToObj(i -> "i" + i));
+
+        Random random = new Random(42);
+        List<Tuple3<String, String, Double>> tuples = new ArrayList<>();
+        for (int u = 0; u < 50; u += 1 + random.nextInt(2)) {
+            String user = "u" + u;
+            random.ints(0, 30).distinct().limit(random.nextInt(10))
+                    .forEach(i -> tuples.add(tuple(user, "i" + i, (double) (1 + random.nextInt(5)))));
+        }
+        data = SimpleFastPreferenceData.load(tuples.stream(), users, items);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted((p1, p2) -> p2.compareTo(p1)).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        PreferenceSnapshot snapshot = new PreferenceSnapshot(preferencesFile, usersFile, itemsFile);
+        assertFalse(snapshot.isValid());
+
+        snapshot.write(data);
+        assertTrue(snapshot.isValid());
+
+        FastPreferenceData<String, String> mapped = snapshot.read(users, items);
+        assertEquals(data.numPreferences(), mapped.numPreferences());
+        assertEquals(data.numUsersWithPreferences(), mapped.numUsersWithPreferences());
+        assertEquals(data.numItemsWithPreferences(), mapped.numItemsWithPreferences());
+        assertEquals(data.getUidxWithPreferences().boxed().collect(toList()), mapped.getUidxWithPreferences().boxed().collect(toList()));
+        for (int uidx = 0; uidx < users.numUsers(); uidx++) {
+            assertEquals(data.numItems(uidx), mapped.numItems(uidx));
+            assertEquals(sorted(data.getUidxPreferences(uidx).map(p -> p.v1 + ":" + p.v2)), mapped.getUidxPreferences(uidx).map(p -> p.v1 + ":" + p.v2).collect(joining(",")));
+            assertEquals(sorted(data.getUidxPreferences(uidx).map(p -> p.v1 + ":" + p.v2)), iterate(mapped.getUidxIidxs(uidx), mapped.getUidxVs(uidx)));
+        }
+        for (int iidx = 0; iidx < items.numItems(); iidx++) {
+            assertEquals(data.numUsers(iidx), mapped.numUsers(iidx));
+            assertEquals(sorted(data.getIidxPreferences(iidx).map(p -> p.v1 + ":" + p.v2)), mapped.getIidxPreferences(iidx).map(p -> p.v1 + ":" + p.v2).collect(joining(",")));
+        }
+    }
+
+    @Test
+    public void testStaleWhenSourceChanges() throws IOException {
+        PreferenceSnapshot snapshot = new PreferenceSnapshot(preferencesFile, usersFile, itemsFile);
+        snapshot.write(data);
+
+        Files.write(preferencesFile, "changed source".getBytes());
+        assertFalse(new PreferenceSnapshot(preferencesFile, usersFile, itemsFile).isValid());
+    }
+
+    @Test
+    public void testTruncatedSnapshotIsInvalid() throws IOException {
+        PreferenceSnapshot snapshot = new PreferenceSnapshot(preferencesFile, usersFile, itemsFile);
+        snapshot.write(data);
+
+        try (FileChannel channel = FileChannel.open(snapshot.getSnapshotFile(), WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertFalse(snapshot.isValid());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        PreferenceSnapshot snapshot = new PreferenceSnapshot(preferencesFile, usersFile, itemsFile);
+
+        List<Thread> writers = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread writer = new Thread(() -> {
+                try {
+                    snapshot.write(data);
+                } catch (Throwable ex) {
+                    synchronized (errors) {
+                        errors.add(ex);
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertTrue(errors.isEmpty());
+        assertTrue(snapshot.isValid());
+        assertEquals(data.numPreferences(), snapshot.read(users, items).numPreferences());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.filter(file -> file.toString().endsWith(".tmp")).count());
+        }
+    }
+
+    private static String sorted(Stream<String> prefs) {
+        return prefs.sorted((p1, p2) -> Integer.compare(Integer.parseInt(p1.split(":")[0]), Integer.parseInt(p2.split(":")[0])))
+                .collect(joining(","));
+    }
+
+    private static String iterate(IntIterator idxs, DoubleIterator vs) {
+        List<String> prefs = new ArrayList<>();
+        while (idxs.hasNext()) {
+            prefs.add(idxs.nextInt() + ":" + vs.nextDouble());
+        }
+        return String.join(",", prefs);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.rec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ranksys.core.Recommendation;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.SimpleFastItemIndex;
+import org.ranksys.core.util.tuples.Tuple2od;
+import org.ranksys.formats.rec.RecommendationFormat.Writer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+import static org.ranksys.formats.parsing.Parsers.sp;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class BinaryRecommendationFormatTest {
+
+    private Path file;
+    private FastItemIndex<String> items;
+    private BinaryRecommendationFormat<String, String> format;
+    private List<Recommendation<String, String>> recommendations;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("recommendations", ".bin");
+        items = SimpleFastItemIndex.load(IntStream.range(0, 500).mapToObj(i -> "i" + i));
+        format = new BinaryRecommendationFormat<>(items, sp, sp);
+
+        Random random = new Random(42);
+        recommendations = new ArrayList<>();
+        for (int u = 0; u < 3000; u += 1 + random.nextInt(3)) {
+            List<Tuple2od<String>> recItems = random.ints(0, 500).distinct().limit(random.nextInt(20))
+                    .mapToObj(i -> tuple("i" + i, (double) random.nextFloat()))
+                    .collect(toList());
+            recommendations.add(new Recommendation<>("u" + u, recItems));
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        write(recommendations);
+
+        BinaryRecommendationFormat<String, String>.BinaryReader reader = format.getReader(file);
+        assertEquals(recommendations.size(), reader.numUsers());
+        assertEquals(toString(recommendations), toString(reader.readAll().collect(toList())));
+
+        for (Recommendation<String, String> recommendation : recommendations) {
+            assertEquals(toString(recommendation), toString(reader.getRecommendation(recommendation.getUser()).get()));
+        }
+        assertFalse(reader.getRecommendation("unknown").isPresent());
+        assertFalse(reader.getRecommendation("u3001").isPresent());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        write(new ArrayList<>());
+
+        BinaryRecommendationFormat<String, String>.BinaryReader reader = format.getReader(file);
+        assertEquals(0, reader.numUsers());
+        assertEquals(0, reader.readAll().count());
+        assertFalse(reader.getRecommendation("u0").isPresent());
+    }
+
+    @Test
+    public void testStreamReaderAcrossSegments() throws IOException {
+        write(recommendations);
+
+        BinaryRecommendationFormat<String, String>.BinaryReader reader = format.getReader(new ByteArrayInputStream(Files.readAllBytes(file)), 7);
+        assertEquals(toString(recommendations), toString(reader.readAll().collect(toList())));
+        for (Recommendation<String, String> recommendation : recommendations) {
+            assertEquals(toString(recommendation), toString(reader.getRecommendation(recommendation.getUser()).get()));
+        }
+    }
+
+    @Test
+    public void testSizeOnlyDependsOnContent() throws IOException {
+        write(recommendations.subList(0, 1));
+
+        assertTrue(Files.size(file) < 1024);
+        assertEquals(toString(recommendations.subList(0, 1)), toString(format.getReader(file).readAll().collect(toList())));
+    }
+
+    private void write(List<Recommendation<String, String>> recommendations) throws IOException {
+        try (Writer<String, String> writer = format.getWriter(Files.newOutputStream(file))) {
+            for (Recommendation<String, String> recommendation : recommendations) {
+                writer.write(recommendation);
+            }
+        }
+    }
+
+    private static String toString(List<Recommendation<String, String>> recommendations) {
+        return recommendations.stream().map(BinaryRecommendationFormatTest::toString).collect(toList()).toString();
+    }
+
+    private static String toString(Recommendation<String, String> recommendation) {
+        return recommendation.getUser() + "=" + recommendation.getItems().stream()
+                .map(is -> is.v1 + ":" + (float) is.v2)
+                .collect(toList());
+    }
+}
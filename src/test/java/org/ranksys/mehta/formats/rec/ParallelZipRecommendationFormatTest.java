@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.formats.rec;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ranksys.core.Recommendation;
+import org.ranksys.core.util.tuples.Tuple2od;
+import org.ranksys.formats.rec.RecommendationFormat.Writer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+import static org.ranksys.formats.parsing.Parsers.sp;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class ParallelZipRecommendationFormatTest {
+
+    private ParallelZipRecommendationFormat<String, String> format;
+    private List<Recommendation<String, String>> recommendations;
+
+    @Before
+    public void setUp() {
+        format = new ParallelZipRecommendationFormat<>(sp, sp, false, 2);
+
+        // several blocks of about 1 MB
+        Random random = new Random(42);
+        recommendations = new ArrayList<>();
+        for (int u = 0; u < 10000; u++) {
+            List<Tuple2od<String>> items = random.ints(0, 100000).distinct().limit(random.nextInt(20))
+                    .mapToObj(i -> tuple("item" + i, random.nextDouble()))
+                    .collect(toList());
+            recommendations.add(new Recommendation<>("user" + u, items));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] bytes = write(recommendations);
+
+        assertEquals(toString(recommendations), toString(read(bytes)));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertEquals(0, read(write(new ArrayList<>())).size());
+    }
+
+    @Test
+    public void testTruncatedFileFails() throws IOException {
+        byte[] bytes = write(recommendations);
+
+        for (int length : new int[]{bytes.length - 1, bytes.length - 12, bytes.length / 2}) {
+            try {
+                read(Arrays.copyOf(bytes, length));
+                fail("file truncated to " + length + " of " + bytes.length + " bytes was read");
+            } catch (UncheckedIOException ex) {
+                // expected
+            }
+        }
+    }
+
+    private byte[] write(List<Recommendation<String, String>> recommendations) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Writer<String, String> writer = format.getWriter(out)) {
+            for (Recommendation<String, String> recommendation : recommendations) {
+                writer.write(recommendation);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private List<Recommendation<String, String>> read(byte[] bytes) throws IOException {
+        try (Stream<Recommendation<String, String>> stream = format.getReader(new ByteArrayInputStream(bytes)).readAll()) {
+            return stream.collect(toList());
+        }
+    }
+
+    private static String toString(List<Recommendation<String, String>> recommendations) {
+        return recommendations.stream()
+                .map(recommendation -> recommendation.getUser() + "=" + recommendation.getItems().stream()
+                        .map(is -> is.v1 + ":" + is.v2)
+                        .collect(toList()))
+                .collect(toList())
+                .toString();
+    }
+}
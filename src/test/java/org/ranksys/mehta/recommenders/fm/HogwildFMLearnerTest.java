@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.fm;
+
+import org.junit.Test;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.index.fast.SimpleFastItemIndex;
+import org.ranksys.core.index.fast.SimpleFastUserIndex;
+import org.ranksys.core.preference.fast.SimpleFastPreferenceData;
+import org.ranksys.mehta.recommenders.fm.HogwildFMLearner.Training;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class HogwildFMLearnerTest {
+
+    @Test
+    public void testSampleNegativeFromComplement() {
+        FastUserIndex<String> users = SimpleFastUserIndex.load(Stream.of("u0", "u1", "u2"));
+        FastItemIndex<String> items = SimpleFastItemIndex.load(IntStream.range(0, 6).mapToObj(i -> "i" + i));
+        // u0 has all items but i3, u1 all of them, u2 none
+        Training training = new Training(SimpleFastPreferenceData.load(Stream.concat(
+                IntStream.of(5, 0, 2, 4, 1).mapToObj(i -> tuple("u0", "i" + i, 1.0)),
+                IntStream.range(0, 6).mapToObj(i -> tuple("u1", "i" + i, 1.0))), users, items));
+
+        SplittableRandom random = new SplittableRandom(42);
+        int[] u0Counts = new int[6];
+        int[] u2Counts = new int[6];
+        for (int s = 0; s < 6000; s++) {
+            u0Counts[training.sampleNegative(0, random)]++;
+            u2Counts[training.sampleNegative(2, random)]++;
+        }
+
+        assertArrayEquals(new int[]{0, 0, 0, 6000, 0, 0}, u0Counts);
+        for (int count : u2Counts) {
+            assertEquals(1000, count, 150);
+        }
+        assertEquals(-1, training.sampleNegative(1, random));
+    }
+}
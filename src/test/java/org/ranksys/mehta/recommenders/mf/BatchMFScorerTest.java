@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.mf;
+
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import org.junit.Before;
+import org.junit.Test;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.index.fast.SimpleFastItemIndex;
+import org.ranksys.core.index.fast.SimpleFastUserIndex;
+import org.ranksys.core.util.tuples.Tuple2id;
+import org.ranksys.recommenders.fast.FastRecommendation;
+import org.ranksys.recommenders.mf.Factorization;
+import org.ranksys.recommenders.mf.rec.MFRecommender;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class BatchMFScorerTest {
+
+    private static final int K = 4;
+    private static final int NUM_USERS = 70;
+    private static final int NUM_ITEMS = 300;
+
+    private Factorization<String, String> factorization;
+    private MFRecommender<String, String> recommender;
+    private BatchMFRecommender<String, String> batch;
+    private int[] uidxs;
+
+    @Before
+    public void setUp() {
+        FastUserIndex<String> users = SimpleFastUserIndex.load(IntStream.range(0, NUM_USERS).mapToObj(u -> "u" + u));
+        FastItemIndex<String> items = SimpleFastItemIndex.load(IntStream.range(0, NUM_ITEMS).mapToObj(i -> "i" + i));
+
+        Random random = new Random(42);
+        factorization = new Factorization<>(users, items, random(random, NUM_USERS), random(random, NUM_ITEMS), K);
+        recommender = new MFRecommender<>(users, items, factorization);
+        batch = new BatchMFRecommender<>(users, items, factorization);
+
+        // more than one group of users, with unknown users in between
+        List<Integer> block = new ArrayList<>();
+        for (int uidx = 0; uidx < NUM_USERS; uidx++) {
+            block.add(uidx);
+            if (uidx % 9 == 0) {
+                block.add(-1);
+            }
+        }
+        Collections.shuffle(block, random);
+        uidxs = block.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void testSameAsMFRecommender() {
+        for (int maxLength : new int[]{1, 10, NUM_ITEMS, NUM_ITEMS + 5, 0}) {
+            assertSameAsMFRecommender(maxLength);
+        }
+    }
+
+    @Test
+    public void testReleasesEveryFilterOnce() {
+        List<IntPredicate> created = Collections.synchronizedList(new ArrayList<>());
+        Set<IntPredicate> released = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+        batch.getRecommendations(uidxs, u -> {
+            IntPredicate filter = filter(uidxs[u]);
+            created.add(filter);
+            return filter;
+        }, filter -> assertTrue(released.add(filter)), 10);
+
+        assertEquals(NUM_USERS, created.size());
+        assertEquals(NUM_USERS, released.size());
+        created.forEach(filter -> assertTrue(released.contains(filter)));
+    }
+
+    private void assertSameAsMFRecommender(int maxLength) {
+        FastRecommendation[] recommendations = batch.getRecommendations(uidxs, u -> filter(uidxs[u]), filter -> {
+        }, maxLength);
+
+        assertEquals(uidxs.length, recommendations.length);
+        for (int u = 0; u < uidxs.length; u++) {
+            FastRecommendation expected = recommender.getRecommendation(uidxs[u], maxLength, filter(uidxs[u]));
+            FastRecommendation actual = recommendations[u];
+
+            assertEquals(expected.getUidx(), actual.getUidx());
+            List<Tuple2id> expectedItems = expected.getIidxs();
+            List<Tuple2id> actualItems = actual.getIidxs();
+            assertEquals("maxLength " + maxLength + ", uidx " + uidxs[u], expectedItems.size(), actualItems.size());
+            for (int i = 0; i < expectedItems.size(); i++) {
+                assertEquals(expectedItems.get(i).v1, actualItems.get(i).v1);
+                assertEquals(expectedItems.get(i).v2, actualItems.get(i).v2, 1e-12);
+                if (i > 0) {
+                    assertTrue(actualItems.get(i - 1).v2 >= actualItems.get(i).v2);
+                }
+            }
+        }
+    }
+
+    private static IntPredicate filter(int uidx) {
+        int m = 2 + Math.max(uidx, 0) % 5;
+        return iidx -> iidx % m != 0;
+    }
+
+    private static DenseDoubleMatrix2D random(Random random, int rows) {
+        DenseDoubleMatrix2D m = new DenseDoubleMatrix2D(rows, K);
+        for (int r = 0; r < rows; r++) {
+            for (int f = 0; f < K; f++) {
+                m.setQuick(r, f, random.nextGaussian());
+            }
+        }
+        return m;
+    }
+}
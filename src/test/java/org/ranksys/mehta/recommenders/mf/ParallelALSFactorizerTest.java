@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.mf;
+
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import org.junit.Before;
+import org.junit.Test;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.index.fast.SimpleFastItemIndex;
+import org.ranksys.core.index.fast.SimpleFastUserIndex;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.core.preference.fast.SimpleFastPreferenceData;
+import org.ranksys.recommenders.mf.Factorization;
+import org.ranksys.recommenders.mf.als.HKVFactorizer;
+
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class ParallelALSFactorizerTest {
+
+    private static final int K = 3;
+    private static final double LAMBDA = 0.1;
+    private static final DoubleUnaryOperator CONFIDENCE = x -> 1 + 2 * x;
+
+    private FastUserIndex<String> users;
+    private FastItemIndex<String> items;
+    private FastPreferenceData<String, String> data;
+    private double[][] p0;
+    private double[][] q0;
+
+    @Before
+    public void setUp() {
+        users = SimpleFastUserIndex.load(IntStream.range(0, 6).mapToObj(u -> "u" + u));
+        items = SimpleFastItemIndex.load(IntStream.range(0, 5).mapToObj(i -> "i" + i));
+        // every user and item has preferences, and all values are 1
+        data = SimpleFastPreferenceData.load(Stream.of(
+                tuple("u0", "i0", 1.0), tuple("u0", "i1", 1.0),
+                tuple("u1", "i1", 1.0), tuple("u1", "i2", 1.0), tuple("u1", "i4", 1.0),
+                tuple("u2", "i0", 1.0), tuple("u2", "i3", 1.0),
+                tuple("u3", "i2", 1.0),
+                tuple("u4", "i3", 1.0), tuple("u4", "i4", 1.0), tuple("u4", "i0", 1.0),
+                tuple("u5", "i1", 1.0)), users, items);
+
+        Random random = new Random(42);
+        p0 = random(random, users.numUsers());
+        q0 = random(random, items.numItems());
+    }
+
+    @Test
+    public void testHKVMatchesSequential() {
+        Factorization<String, String> parallel = factorization();
+        Factorization<String, String> sequential = factorization();
+
+        new ParallelHKVFactorizer<String, String>(LAMBDA, CONFIDENCE, 5, 2, 0).factorize(parallel, data);
+        new HKVFactorizer<String, String>(LAMBDA, CONFIDENCE, 5).factorize(sequential, data);
+
+        assertMatrixEquals(sequential.getUserMatrix().toArray(), parallel.getUserMatrix().toArray());
+        assertMatrixEquals(sequential.getItemMatrix().toArray(), parallel.getItemMatrix().toArray());
+    }
+
+    @Test
+    public void testPZTConvergesToExactSolve() {
+        ParallelHKVFactorizer<String, String> hkv = new ParallelHKVFactorizer<>(LAMBDA, CONFIDENCE, 1, 1, 0);
+        ParallelPZTFactorizer<String, String> pzt = new ParallelPZTFactorizer<>(LAMBDA, CONFIDENCE, 1, 1, 0);
+        double[] gram = new double[K * K];
+        for (double[] row : q0) {
+            for (int a = 0; a < K; a++) {
+                for (int c = 0; c < K; c++) {
+                    gram[a * K + c] += row[a] * row[c];
+                }
+            }
+        }
+        // preferences of u1
+        int[] idxs = {1, 2, 4};
+        double[] values = {1.0, 1.0, 1.0};
+
+        double[] exact = p0[1].clone();
+        hkv.solve(exact, q0, gram, idxs, values, idxs.length, K, new double[hkv.scratchSize(K, idxs.length)]);
+
+        // every RR1 cycle is one round of coordinate descent on the same problem
+        double[] approx = p0[1].clone();
+        double[] scratch = new double[pzt.scratchSize(K, idxs.length)];
+        for (int t = 0; t < 500; t++) {
+            pzt.solve(approx, q0, gram, idxs, values, idxs.length, K, scratch);
+        }
+
+        assertArrayEquals(exact, approx, 1e-6);
+    }
+
+    @Test
+    public void testErrorDoesNotIncrease() {
+        for (ParallelALSFactorizer<String, String> factorizer : new ParallelALSFactorizer[]{
+            new ParallelHKVFactorizer<String, String>(LAMBDA, CONFIDENCE, 1, 2, 0),
+            new ParallelPZTFactorizer<String, String>(LAMBDA, CONFIDENCE, 1, 2, 0)}) {
+            double[][] p = copy(p0);
+            double[][] q = copy(q0);
+
+            double error = factorizer.error(new Factorization<>(users, items, new DenseDoubleMatrix2D(p), new DenseDoubleMatrix2D(q), K), data);
+            for (int t = 0; t < 10; t++) {
+                factorizer.iterate(p, q, data, 1);
+                double next = factorizer.error(new Factorization<>(users, items, new DenseDoubleMatrix2D(p), new DenseDoubleMatrix2D(q), K), data);
+                assertTrue(factorizer.getClass().getSimpleName() + " error went up from " + error + " to " + next, next <= error + 1e-9);
+                error = next;
+            }
+        }
+    }
+
+    private Factorization<String, String> factorization() {
+        return new Factorization<>(users, items, new DenseDoubleMatrix2D(copy(p0)), new DenseDoubleMatrix2D(copy(q0)), K);
+    }
+
+    private static double[][] random(Random random, int rows) {
+        double[][] m = new double[rows][K];
+        for (double[] row : m) {
+            for (int k = 0; k < K; k++) {
+                row[k] = Math.sqrt(1.0 / K) * random.nextDouble();
+            }
+        }
+        return m;
+    }
+
+    private static double[][] copy(double[][] m) {
+        return Stream.of(m).map(double[]::clone).toArray(double[][]::new);
+    }
+
+    private static void assertMatrixEquals(double[][] expected, double[][] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], actual[i], 1e-6);
+        }
+    }
+}
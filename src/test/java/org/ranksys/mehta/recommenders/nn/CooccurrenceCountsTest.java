@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.nn;
+
+import org.jooq.lambda.tuple.Tuple3;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.index.fast.SimpleFastItemIndex;
+import org.ranksys.core.index.fast.SimpleFastUserIndex;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.core.preference.fast.SimpleFastPreferenceData;
+import org.ranksys.mehta.formats.preference.PreferenceDeltas;
+import org.ranksys.mehta.formats.preference.PreferenceDeltas.MergePolicy;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class CooccurrenceCountsTest {
+
+    private Path dir;
+    private FastUserIndex<String> users;
+    private FastItemIndex<String> items;
+    private FastPreferenceData<String, String> data;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("cooccurrences");
+        users = SimpleFastUserIndex.load(IntStream.range(0, 40).mapToObj(u -> "u" + u));
+        items = SimpleFastItemIndex.load(IntStream.range(0, 25).mapToObj(i -> "i" + i));
+
+        Random random = new Random(42);
+        List<Tuple3<String, String, Double>> tuples = new ArrayList<>();
+        for (int u = 0; u < 40; u++) {
+            String user = "u" + u;
+            random.ints(0, 25).distinct().limit(random.nextInt(8))
+                    .forEach(i -> tuples.add(tuple(user, "i" + i, 1.0)));
+        }
+        data = SimpleFastPreferenceData.load(tuples.stream(), users, items);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted((p1, p2) -> p2.compareTo(p1)).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testBuild() {
+        assertCounts(data, CooccurrenceCounts.build(data));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path file = dir.resolve("counts");
+        CooccurrenceCounts.build(data).write(file, "fingerprint");
+
+        assertCounts(data, CooccurrenceCounts.read(file, "fingerprint", items.numItems()));
+        assertNull(CooccurrenceCounts.read(file, "other fingerprint", items.numItems()));
+        assertNull(CooccurrenceCounts.read(file, "fingerprint", items.numItems() + 1));
+
+        try (FileChannel channel = FileChannel.open(file, WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertNull(CooccurrenceCounts.read(file, "fingerprint", items.numItems()));
+    }
+
+    @Test
+    public void testUpdate() throws IOException {
+        Path deltaFile = Files.write(dir.resolve("delta.data"), Arrays.asList(
+                "u0\ti1\t1.0",
+                "u0\ti2\t1.0",
+                "u1\ti1\t1.0",
+                "u39\ti24\t1.0"));
+        PreferenceDeltas deltas = new PreferenceDeltas(
+                Files.write(dir.resolve("train.data"), "train".getBytes()),
+                Files.write(dir.resolve("users.txt"), "users".getBytes()),
+                Files.write(dir.resolve("items.txt"), "items".getBytes()),
+                Collections.singletonList(deltaFile), MergePolicy.REPLACE);
+
+        CooccurrenceCounts counts = CooccurrenceCounts.build(data);
+        counts.update(data, deltas.getNewPairs(data, 0, users, items));
+
+        assertCounts(deltas.apply(data, 0, users, items), counts);
+    }
+
+    private void assertCounts(FastPreferenceData<String, String> data, CooccurrenceCounts counts) {
+        for (int iidx = 0; iidx < items.numItems(); iidx++) {
+            assertEquals(data.numUsers(iidx), counts.getCount(iidx));
+            for (int jidx = 0; jidx < items.numItems(); jidx++) {
+                int i = iidx;
+                int j = jidx;
+                long expected = i == j ? 0 : data.getUidxWithPreferences()
+                        .filter(uidx -> data.getUidxPreferences(uidx).anyMatch(pref -> pref.v1 == i)
+                                && data.getUidxPreferences(uidx).anyMatch(pref -> pref.v1 == j))
+                        .count();
+                assertEquals(expected, counts.getCooccurrences(iidx, jidx));
+            }
+        }
+    }
+}
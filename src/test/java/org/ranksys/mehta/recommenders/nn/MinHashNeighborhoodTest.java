@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.nn;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ranksys.core.util.tuples.Tuple2id;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class MinHashNeighborhoodTest {
+
+    private static final int NUM_CLUSTERS = 10;
+    private static final int CLUSTER_SIZE = 20;
+    private static final int NUM_ELEMENTS = 500;
+    private static final int K = 5;
+
+    private int[][] sets;
+
+    @Before
+    public void setUp() {
+        // sets of the same cluster share most of their elements, the last set
+        // is empty
+        Random random = new Random(42);
+        sets = new int[NUM_CLUSTERS * CLUSTER_SIZE + 1][];
+        for (int c = 0; c < NUM_CLUSTERS; c++) {
+            for (int s = 0; s < CLUSTER_SIZE; s++) {
+                int base = c * 15;
+                sets[c * CLUSTER_SIZE + s] = IntStream.concat(
+                        random.ints(base, base + 15).distinct().limit(10),
+                        random.ints(NUM_CLUSTERS * 15, NUM_ELEMENTS).distinct().limit(2))
+                        .sorted().distinct().toArray();
+            }
+        }
+        sets[sets.length - 1] = new int[0];
+    }
+
+    @Test
+    public void testRecall() {
+        assertTrue(recall(new MinHashNeighborhood(sets.length, idx -> IntStream.of(sets[idx]), null, 30, 2, K, 1000, 0L)) >= 0.9);
+    }
+
+    @Test
+    public void testRecallWithFewCandidates() {
+        assertTrue(recall(new MinHashNeighborhood(sets.length, idx -> IntStream.of(sets[idx]), null, 30, 2, K, 2 * K, 0L)) >= 0.9);
+    }
+
+    @Test
+    public void testDeterministic() {
+        MinHashNeighborhood n1 = new MinHashNeighborhood(sets.length, idx -> IntStream.of(sets[idx]), null, 10, 2, K, 8, 7L);
+        MinHashNeighborhood n2 = new MinHashNeighborhood(sets.length, idx -> IntStream.of(sets[idx]), null, 10, 2, K, 8, 7L);
+
+        for (int idx = 0; idx < sets.length; idx++) {
+            assertEquals(neighbors(n1, idx), neighbors(n2, idx));
+        }
+    }
+
+    @Test
+    public void testEmptySets() {
+        MinHashNeighborhood neighborhood = new MinHashNeighborhood(sets.length, idx -> IntStream.of(sets[idx]), null, 30, 2, K, 1000, 0L);
+        int empty = sets.length - 1;
+
+        assertEquals(0, neighborhood.getNeighbors(empty).count());
+        for (int idx = 0; idx < empty; idx++) {
+            assertTrue(neighborhood.getNeighbors(idx).noneMatch(t -> t.v1 == empty));
+        }
+    }
+
+    /**
+     * Fraction of the returned neighbors that are among the exact top-k by
+     * Jaccard similarity, counting ties with the k-th neighbor as exact.
+     */
+    private double recall(MinHashNeighborhood neighborhood) {
+        int found = 0;
+        int total = 0;
+        for (int idx = 0; idx < sets.length - 1; idx++) {
+            int i = idx;
+            double[] similarities = IntStream.range(0, sets.length - 1)
+                    .filter(other -> other != i)
+                    .mapToDouble(other -> jaccard(sets[i], sets[other]))
+                    .sorted()
+                    .toArray();
+            double kth = similarities[similarities.length - K];
+
+            List<Tuple2id> neighbors = neighborhood.getNeighbors(idx).collect(toList());
+            assertTrue(neighbors.size() <= K);
+            found += neighbors.stream().filter(t -> jaccard(sets[i], sets[t.v1]) >= kth).count();
+            total += K;
+        }
+
+        return found / (double) total;
+    }
+
+    private static List<Integer> neighbors(MinHashNeighborhood neighborhood, int idx) {
+        return neighborhood.getNeighbors(idx).map(t -> t.v1).collect(toList());
+    }
+
+    private static double jaccard(int[] s1, int[] s2) {
+        long intersection = Arrays.stream(s1).filter(e -> Arrays.binarySearch(s2, e) >= 0).count();
+        return intersection / (double) (s1.length + s2.length - intersection);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.validation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class EarlyStoppingTest {
+
+    private final Validation validation = new Validation(10, new int[][]{{0, 1}}, new int[][]{{2}}, 1, 5, 0L);
+
+    @Test
+    public void testLastStepIsCapped() {
+        assertEquals(Arrays.asList(3, 3, 3, 3, 3, 3, 2), steps(20, 3));
+        assertEquals(Arrays.asList(5, 5), steps(10, 5));
+        assertEquals(Arrays.asList(4), steps(4, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoIterationsFails() {
+        steps(0, 3);
+    }
+
+    @Test
+    public void testNaNKeepsLastModel() {
+        Validation nan = new Validation(10, new int[][]{{0, 1}}, new int[][]{{2}}, 1, 5, 0L) {
+
+            @Override
+            public double auc(Scorer scorer) {
+                return Double.NaN;
+            }
+        };
+
+        List<Integer> steps = new ArrayList<>();
+        Integer model = train(nan, 10, 1, 3, steps);
+
+        assertEquals(Arrays.asList(1, 1, 1), steps);
+        assertEquals(Integer.valueOf(3), model);
+    }
+
+    private List<Integer> steps(int maxIter, int evalEvery) {
+        List<Integer> steps = new ArrayList<>();
+        train(validation, maxIter, evalEvery, Integer.MAX_VALUE, steps);
+
+        return steps;
+    }
+
+    private static Integer train(Validation validation, int maxIter, int evalEvery, int patience, List<Integer> steps) {
+        return new EarlyStopping<String, String>(null, validation, evalEvery, patience).train(maxIter, new EarlyStopping.Trainer<Integer>() {
+
+            @Override
+            public void step(int numIter) {
+                steps.add(numIter);
+            }
+
+            @Override
+            public Validation.Scorer scorer() {
+                int iter = steps.stream().mapToInt(Integer::intValue).sum();
+                return (uidx, iidx) -> iidx < 2 ? iter : 0.0;
+            }
+
+            @Override
+            public Integer snapshot() {
+                return steps.size();
+            }
+        });
+    }
+}
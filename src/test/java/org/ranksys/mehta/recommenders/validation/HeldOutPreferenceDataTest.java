@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.recommenders.validation;
+
+import org.junit.Test;
+import org.ranksys.core.index.fast.FastItemIndex;
+import org.ranksys.core.index.fast.FastUserIndex;
+import org.ranksys.core.index.fast.SimpleFastItemIndex;
+import org.ranksys.core.index.fast.SimpleFastUserIndex;
+import org.ranksys.core.preference.fast.FastPreferenceData;
+import org.ranksys.core.preference.fast.SimpleFastPreferenceData;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class HeldOutPreferenceDataTest {
+
+    @Test
+    public void testHeldOutPairsAreRemoved() {
+        FastUserIndex<String> users = SimpleFastUserIndex.load(Stream.of("u0", "u1", "u2"));
+        FastItemIndex<String> items = SimpleFastItemIndex.load(IntStream.range(0, 4).mapToObj(i -> "i" + i));
+        FastPreferenceData<String, String> data = SimpleFastPreferenceData.load(Stream.of(
+                tuple("u0", "i0", 1.0), tuple("u0", "i1", 2.0),
+                tuple("u1", "i1", 3.0),
+                tuple("u2", "i2", 4.0), tuple("u2", "i3", 5.0)), users, items);
+
+        // u1 has its only preference held out, u2 a pair that is not in the data
+        FastPreferenceData<String, String> train = new HeldOutPreferenceData<>(data, new int[][]{{1}, {1}, {0}});
+
+        assertEquals(3, train.numPreferences());
+        assertEquals(2, train.numUsersWithPreferences());
+        assertEquals(3, train.numItemsWithPreferences());
+        assertArrayEquals(new int[]{1, 0, 2}, IntStream.range(0, 3).map(train::numItems).toArray());
+        assertArrayEquals(new int[]{1, 0, 1, 1}, IntStream.range(0, 4).map(train::numUsers).toArray());
+        assertArrayEquals(new int[]{0}, train.getUidxPreferences(0).mapToInt(p -> p.v1).toArray());
+        assertArrayEquals(new int[0], train.getIidxPreferences(1).mapToInt(p -> p.v1).toArray());
+        assertArrayEquals(new int[]{0, 2}, train.getUidxWithPreferences().toArray());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.runner;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class BoundedExecutorTest {
+
+    @Test
+    public void testBoundedConcurrency() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+
+        BoundedExecutor.execute(3, IntStream.range(0, 20).boxed().iterator(), String::valueOf, i -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            running.decrementAndGet();
+            done.incrementAndGet();
+        });
+
+        assertEquals(20, done.get());
+        assertTrue(maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void testErrorPropagates() throws Exception {
+        AtomicInteger read = new AtomicInteger();
+        Iterator<Integer> elements = IntStream.range(0, 1000).peek(i -> read.incrementAndGet()).boxed().iterator();
+
+        try {
+            BoundedExecutor.execute(2, elements, String::valueOf, i -> {
+                if (i == 5) {
+                    throw new AssertionError("task " + i);
+                }
+                Thread.sleep(1);
+            });
+            fail("error not propagated");
+        } catch (AssertionError ex) {
+            assertEquals("task 5", ex.getMessage());
+        }
+        assertTrue(read.get() < 1000);
+    }
+
+    @Test
+    public void testExceptionPropagates() throws Exception {
+        try {
+            BoundedExecutor.execute(2, IntStream.range(0, 10).boxed().iterator(), String::valueOf, i -> {
+                if (i == 3) {
+                    throw new IOException("task " + i);
+                }
+            });
+            fail("exception not propagated");
+        } catch (IOException ex) {
+            assertEquals("task 3", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.runner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ranksys.core.Recommendation;
+import org.ranksys.core.index.fast.SimpleFastItemIndex;
+import org.ranksys.mehta.formats.rec.BinaryRecommendationFormat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+import static org.ranksys.formats.parsing.Parsers.sp;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class CheckpointWriterTest {
+
+    private Path dir;
+    private Path file;
+    private BinaryRecommendationFormat<String, String> format;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("checkpoint");
+        file = dir.resolve("recommendations.bin");
+        format = new BinaryRecommendationFormat<>(SimpleFastItemIndex.load(IntStream.range(0, 10).mapToObj(i -> "i" + i)), sp, sp);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path f : files.sorted((p1, p2) -> p2.compareTo(p1)).collect(toList())) {
+                Files.delete(f);
+            }
+        }
+    }
+
+    @Test
+    public void testResumeSameRun() throws IOException {
+        interruptedRun("run");
+
+        CheckpointWriter<String, String> writer = new CheckpointWriter<>(file, format, 2, "run");
+        assertEquals(new HashSet<>(asList("u0", "u1", "u2", "u3")), writer.getWrittenUsers());
+        writer.write(recommendation(4));
+        writer.commit();
+
+        assertEquals(asList("u0", "u1", "u2", "u3", "u4"), users(file));
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".segments")));
+    }
+
+    @Test
+    public void testDiscardOtherRun() throws IOException {
+        interruptedRun("run");
+
+        CheckpointWriter<String, String> writer = new CheckpointWriter<>(file, format, 2, "other run");
+        assertTrue(writer.getWrittenUsers().isEmpty());
+        writer.write(recommendation(5));
+        writer.commit();
+
+        assertEquals(asList("u5"), users(file));
+    }
+
+    @Test
+    public void testNeverResumeWithoutManifest() throws IOException {
+        interruptedRun("run");
+
+        assertTrue(new CheckpointWriter<>(file, format, 2, null).getWrittenUsers().isEmpty());
+        assertTrue(new CheckpointWriter<>(file, format, 2, "run").getWrittenUsers().isEmpty());
+    }
+
+    private void interruptedRun(String manifest) throws IOException {
+        CheckpointWriter<String, String> writer = new CheckpointWriter<>(file, format, 2, manifest);
+        for (int u = 0; u < 5; u++) {
+            writer.write(recommendation(u));
+        }
+    }
+
+    private List<String> users(Path file) throws IOException {
+        try (Stream<Recommendation<String, String>> recommendations = format.getReader(file).readAll()) {
+            return recommendations.map(Recommendation::getUser).collect(toList());
+        }
+    }
+
+    private static Recommendation<String, String> recommendation(int u) {
+        return new Recommendation<>("u" + u, asList(tuple("i" + u, 1.0), tuple("i" + (u + 1), 0.5)));
+    }
+}
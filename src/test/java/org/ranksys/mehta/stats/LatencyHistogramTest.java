@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mehta.stats;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0L, histogram.getPercentile(0.5));
+        assertEquals(0L, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 10; v++) {
+            histogram.record(v);
+        }
+
+        assertEquals(1L, histogram.getPercentile(0.0));
+        assertEquals(5L, histogram.getPercentile(0.5));
+        assertEquals(9L, histogram.getPercentile(0.9));
+        assertEquals(10L, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void testPercentileError() {
+        Random random = new Random(42);
+        long[] values = new long[100_000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            // log-uniform between 1 us and 1 s
+            values[i] = (long) Math.pow(10, 3 + 6 * random.nextDouble());
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double p : new double[]{0.01, 0.25, 0.5, 0.9, 0.99, 0.999}) {
+            long exact = values[(int) Math.ceil(p * values.length) - 1];
+            long reported = histogram.getPercentile(p);
+            assertTrue(p + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue(p + ": " + reported + " vs " + exact, reported - exact <= exact / 32);
+        }
+        assertEquals(values[values.length - 1], histogram.getPercentile(1.0));
+    }
+}